@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceActor;
+import org.hawkinssoftware.azia.core.action.UserInterfaceActorPreview;
+import org.hawkinssoftware.azia.core.action.UserInterfaceDirective;
+import org.hawkinssoftware.azia.core.action.UserInterfaceNotification;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionQuery;
+
+/**
+ * Synthetic actor holding a single integer, so the transaction engine can be driven without any native windowing.
+ * Optionally publishes a preview of its pending <code>BenchmarkDirective</code>s for transactional queries.
+ * 
+ * @author Byron Hawkins
+ */
+public class BenchmarkActor implements UserInterfaceActor
+{
+	public static final UserInterfaceTransactionQuery.Property<BenchmarkActor, Integer> VALUE = new UserInterfaceTransactionQuery.Property<BenchmarkActor, Integer>(
+			"getValue") {
+		@Override
+		protected Integer getCurrentValue(BenchmarkActor parentValue)
+		{
+			return parentValue.getValue();
+		}
+	};
+
+	/**
+	 * Previews the value assigned by a pending <code>BenchmarkDirective</code>.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class ValuePreview implements UserInterfaceActorPreview
+	{
+		@Override
+		public boolean affects(UserInterfaceTransactionQuery.Property<?, ?> property)
+		{
+			return property == VALUE;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <T> T getPreview(UserInterfaceDirective action, T value)
+		{
+			return (T) Integer.valueOf(((BenchmarkDirective) action).value);
+		}
+	}
+
+	private final boolean previews;
+	private final List<UserInterfaceActorPreview> valuePreviews = Collections.<UserInterfaceActorPreview> singletonList(new ValuePreview());
+
+	private int value;
+
+	public BenchmarkActor(boolean previews)
+	{
+		this.previews = previews;
+	}
+
+	public int getValue()
+	{
+		return value;
+	}
+
+	@Override
+	public void apply(UserInterfaceDirective action)
+	{
+		if (action instanceof BenchmarkDirective)
+		{
+			value = ((BenchmarkDirective) action).value;
+		}
+	}
+
+	@Override
+	public boolean hasPreviews()
+	{
+		return previews;
+	}
+
+	@Override
+	public List<UserInterfaceActorPreview> getPreviews(UserInterfaceDirective action)
+	{
+		if (action instanceof BenchmarkDirective)
+		{
+			return valuePreviews;
+		}
+		return Collections.emptyList();
+	}
+
+	@Override
+	public void actionPosted(UserInterfaceNotification notification, PendingTransaction transaction)
+	{
+	}
+
+	@Override
+	public UserInterfaceActor getActor()
+	{
+		return this;
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceNotification;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransaction.ActorBasedContributor;
+
+/**
+ * Passive contributor which only counts the notifications it receives, for measuring broadcast fan-out.
+ * 
+ * @author Byron Hawkins
+ */
+public class BenchmarkContributor implements ActorBasedContributor
+{
+	private int notificationCount = 0;
+
+	@Override
+	public void actionPosted(UserInterfaceNotification notification, PendingTransaction transaction)
+	{
+		notificationCount++;
+	}
+
+	public int getNotificationCount()
+	{
+		return notificationCount;
+	}
+}
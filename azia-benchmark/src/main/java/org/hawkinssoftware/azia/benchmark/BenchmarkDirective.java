@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceActorDelegate;
+import org.hawkinssoftware.azia.core.action.UserInterfaceDirective;
+
+/**
+ * Assigns a new value to a <code>BenchmarkActor</code> when committed.
+ * 
+ * @author Byron Hawkins
+ */
+public class BenchmarkDirective extends UserInterfaceDirective
+{
+	final int value;
+
+	public BenchmarkDirective(UserInterfaceActorDelegate actor, int value)
+	{
+		super(actor);
+
+		this.value = value;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.InstantiationTask;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceActor.SynchronizationRole;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.hawkinssoftware.azia.core.lock.LockRegistry;
+
+/**
+ * Headless bootstrap for the benchmarks. The benchmarks run without the RNS agent, so the actor registration normally
+ * performed by the <code>@InitializationAspect</code> of <code>UserInterfaceActor</code> is done here explicitly, and
+ * the access validation (which depends on the agent's semaphore hooks) must be disabled in the forked JVM.
+ * 
+ * @author Byron Hawkins
+ */
+public final class BenchmarkEnvironment
+{
+	public static final String DISABLE_ACCESS_VALIDATION = "-Ddisable-access-validation";
+	public static final String POOL_TRANSACTIONS = "-Dpool-transactions";
+	public static final String PARALLEL_COMMIT = "-Dparallel-commit";
+
+	private static boolean initialized = false;
+
+	public static synchronized void initialize()
+	{
+		if (!initialized)
+		{
+			LockRegistry.initialize();
+			initialized = true;
+		}
+	}
+
+	/**
+	 * Creates <code>count</code> actors on the calling thread, each having its own <code>AutonomousLock</code>.
+	 */
+	public static BenchmarkActor[] createActors(final int count, final boolean previews) throws ConcurrentAccessException
+	{
+		initialize();
+
+		final BenchmarkActor[] actors = new BenchmarkActor[count];
+		TransactionRegistry.executeTask(new UserInterfaceTask() {
+			@Override
+			protected boolean execute()
+			{
+				getTransaction(GenericTransaction.class);
+				for (int i = 0; i < count; i++)
+				{
+					final int index = i;
+					new InstantiationTask.Task(SynchronizationRole.AUTONOMOUS, "Benchmark actor " + i) {
+						@Override
+						protected void execute()
+						{
+							actors[index] = register(new BenchmarkActor(previews));
+						}
+					}.start();
+				}
+				return true;
+			}
+		});
+		return actors;
+	}
+
+	private static BenchmarkActor register(BenchmarkActor actor)
+	{
+		TransactionRegistry.getInstance().addActorBasedContributor(actor, actor);
+		LockRegistry.getInstance().registerActor(actor, false);
+		return actor;
+	}
+
+	private BenchmarkEnvironment()
+	{
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.lock.WaitGraphProbe;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of one crosslock check as the number of transaction threads grows. Parked helper threads publish
+ * a chain of waits: helper <i>i</i> holds lock <i>i</i> and awaits lock <i>i + 1</i>, and the last helper awaits the
+ * lock held by the benchmark thread, so that awaiting lock 1 from the benchmark thread closes a cycle through every
+ * helper. Bystander threads each hold a lock and await a free one, contributing waiters which are not on the path.
+ * The lock state is only simulated in the bookkeeping, through the <code>WaitGraphProbe</code>, so no thread actually
+ * blocks.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class CrossLockDetectionBenchmark
+{
+	/**
+	 * Takes a lock and publishes a wait in the bookkeeping of its own thread, then parks until released.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class WaitingHelper extends Thread
+	{
+		private final WaitGraphProbe.Node heldLock;
+		private final WaitGraphProbe.Node awaitedLock;
+		private final CountDownLatch ready;
+		private final CountDownLatch release;
+
+		WaitingHelper(WaitGraphProbe.Node heldLock, WaitGraphProbe.Node awaitedLock, CountDownLatch ready, CountDownLatch release)
+		{
+			this.heldLock = heldLock;
+			this.awaitedLock = awaitedLock;
+			this.ready = ready;
+			this.release = release;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run()
+		{
+			WaitGraphProbe.hold(heldLock);
+			WaitGraphProbe.await(awaitedLock);
+			ready.countDown();
+			try
+			{
+				release.await();
+			}
+			catch (InterruptedException ignored)
+			{
+			}
+			WaitGraphProbe.release();
+		}
+	}
+
+	@Param({ "1", "4", "16", "64" })
+	int chainLength;
+
+	@Param({ "0", "64" })
+	int bystanders;
+
+	private final List<WaitingHelper> helpers = new ArrayList<WaitingHelper>();
+	private CountDownLatch release;
+
+	private WaitGraphProbe.Node cycleLock;
+	private WaitGraphProbe.Node freeLock;
+
+	@Setup
+	public void publishWaits() throws InterruptedException
+	{
+		BenchmarkEnvironment.initialize();
+
+		WaitGraphProbe.Node[] chain = new WaitGraphProbe.Node[chainLength + 1];
+		for (int i = 0; i < chain.length; i++)
+		{
+			chain[i] = WaitGraphProbe.createNode("chain-" + i);
+		}
+		freeLock = WaitGraphProbe.createNode("free");
+
+		WaitGraphProbe.hold(chain[0]);
+		cycleLock = chain[1];
+
+		CountDownLatch ready = new CountDownLatch(chainLength + bystanders);
+		release = new CountDownLatch(1);
+		for (int i = 1; i <= chainLength; i++)
+		{
+			helpers.add(new WaitingHelper(chain[i], chain[(i + 1) % chain.length], ready, release));
+		}
+		for (int i = 0; i < bystanders; i++)
+		{
+			helpers.add(new WaitingHelper(WaitGraphProbe.createNode("bystander-" + i), freeLock, ready, release));
+		}
+		for (WaitingHelper helper : helpers)
+		{
+			helper.start();
+		}
+		ready.await();
+	}
+
+	@TearDown
+	public void releaseWaits() throws InterruptedException
+	{
+		release.countDown();
+		for (WaitingHelper helper : helpers)
+		{
+			helper.join();
+		}
+		helpers.clear();
+		WaitGraphProbe.release();
+	}
+
+	@Benchmark
+	public boolean closeCycle()
+	{
+		boolean collision = WaitGraphProbe.await(cycleLock);
+		WaitGraphProbe.clearAwait();
+		return collision;
+	}
+
+	@Benchmark
+	public boolean awaitFreeLock()
+	{
+		boolean collision = WaitGraphProbe.await(freeLock);
+		WaitGraphProbe.clearAwait();
+		return collision;
+	}
+}
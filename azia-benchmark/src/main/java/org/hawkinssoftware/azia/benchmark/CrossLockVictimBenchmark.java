@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.RetryPolicy;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One thread repeatedly assigns every actor in random order while three others assign two actors at a time, so that
+ * the long task crosslocks with the short ones on nearly every attempt. The sampled percentiles of the
+ * <code>longTask</code> show whether it is starved by the short tasks; since the oldest task in a crosslock is never
+ * the victim, its p99 should stay within a few multiples of its median.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class CrossLockVictimBenchmark
+{
+	private static final int ACTOR_COUNT = 8;
+
+	/**
+	 * Assigns the actors in the given order, with some work between them to widen the window for a crosslock.
+	 *
+	 * @author Byron Hawkins
+	 */
+	private static class CrossingTask extends UserInterfaceTask
+	{
+		private final BenchmarkActor[] actors;
+
+		CrossingTask(BenchmarkActor... actors)
+		{
+			this.actors = actors;
+			setRetryPolicy(RetryPolicy.immediate());
+			setRetryCount(Integer.MAX_VALUE);
+		}
+
+		@Override
+		protected boolean execute()
+		{
+			GenericTransaction transaction = getTransaction(GenericTransaction.class);
+			for (int i = 0; i < actors.length; i++)
+			{
+				transaction.addAction(new BenchmarkDirective(actors[i], i));
+				Blackhole.consumeCPU(100);
+			}
+			return true;
+		}
+	}
+
+	private BenchmarkActor[] actors;
+
+	@Setup
+	public void createActors() throws ConcurrentAccessException
+	{
+		actors = BenchmarkEnvironment.createActors(ACTOR_COUNT, false);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public void longTask() throws ConcurrentAccessException
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		BenchmarkActor[] shuffled = actors.clone();
+		for (int i = shuffled.length - 1; i > 0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			BenchmarkActor swap = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = swap;
+		}
+		TransactionRegistry.executeTask(new CrossingTask(shuffled));
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public void shortTask() throws ConcurrentAccessException
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(ACTOR_COUNT);
+		int second = (first + 1 + random.nextInt(ACTOR_COUNT - 1)) % ACTOR_COUNT;
+		TransactionRegistry.executeTask(new CrossingTask(actors[first], actors[second]));
+	}
+}
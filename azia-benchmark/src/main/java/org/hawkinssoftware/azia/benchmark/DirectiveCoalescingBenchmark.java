@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceActorDelegate;
+import org.hawkinssoftware.azia.core.action.UserInterfaceDirective;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Simulates a drag, in which one session posts 200 successive assignments to the same actor, with a varying number of
+ * <code>ActorBasedContributor</code>s observing the actor. The assignments are either plain directives, each committed
+ * and broadcast, or <code>UserInterfaceDirective.Coalescing</code> directives, which the
+ * <code>GenericTransaction</code> merges into the last one.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class DirectiveCoalescingBenchmark
+{
+	private static final int DRAG_LENGTH = 200;
+
+	/**
+	 * Assigns a value which supersedes any earlier assignment to the same actor.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class CoalescingDirective extends BenchmarkDirective implements UserInterfaceDirective.Coalescing
+	{
+		CoalescingDirective(UserInterfaceActorDelegate actor, int value)
+		{
+			super(actor, value);
+		}
+
+		@Override
+		public Object getMergeKey()
+		{
+			return BenchmarkActor.VALUE;
+		}
+
+		@Override
+		public UserInterfaceDirective merge(UserInterfaceDirective successor)
+		{
+			return successor;
+		}
+	}
+
+	/**
+	 * Posts the whole drag to the actor within one session.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class DragTask extends UserInterfaceTask
+	{
+		@Override
+		protected boolean execute()
+		{
+			GenericTransaction transaction = getTransaction(GenericTransaction.class);
+			for (int i = 0; i < DRAG_LENGTH; i++)
+			{
+				transaction.addAction(coalescing ? new CoalescingDirective(actor, i) : new BenchmarkDirective(actor, i));
+			}
+			return true;
+		}
+	}
+
+	@Param({ "false", "true" })
+	boolean coalescing;
+
+	@Param({ "0", "16" })
+	int contributorCount;
+
+	private BenchmarkActor actor;
+
+	@Setup
+	public void createActor() throws ConcurrentAccessException
+	{
+		actor = BenchmarkEnvironment.createActors(1, false)[0];
+		for (int i = 0; i < contributorCount; i++)
+		{
+			TransactionRegistry.getInstance().addActorBasedContributor(actor, new BenchmarkContributor());
+		}
+	}
+
+	@Benchmark
+	public int drag() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new DragTask());
+		return actor.getValue();
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.GroupCommitQueue;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Submits bursts of single-directive tasks to a one-thread executor, either individually, each in its own session, or
+ * through a <code>GroupCommitQueue</code>, which executes them in batches sharing one session. The actors are few, so
+ * a batch commits many directives to each of the actors it locks.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class GroupCommitBenchmark
+{
+	private static final int BURST_SIZE = 256;
+
+	/**
+	 * Posts a single directive to one actor.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class SingleDirectiveTask extends UserInterfaceTask
+	{
+		private final BenchmarkActor actor;
+		private final int value;
+
+		SingleDirectiveTask(BenchmarkActor actor, int value)
+		{
+			this.actor = actor;
+			this.value = value;
+		}
+
+		@Override
+		protected boolean execute()
+		{
+			getTransaction(GenericTransaction.class).addAction(new BenchmarkDirective(actor, value));
+			return true;
+		}
+	}
+
+	@Param({ "1", "16", "64" })
+	int maxBatchSize;
+
+	private BenchmarkActor[] actors;
+	private ExecutorService executor;
+	private GroupCommitQueue queue;
+
+	@Setup
+	public void createQueue() throws Exception
+	{
+		actors = BenchmarkEnvironment.createActors(4, false);
+		executor = Executors.newSingleThreadExecutor();
+		queue = new GroupCommitQueue(executor, maxBatchSize, 1, TimeUnit.MILLISECONDS);
+	}
+
+	@TearDown
+	public void shutdownExecutor() throws InterruptedException
+	{
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST_SIZE)
+	public boolean submitIndividually()
+	{
+		CompletableFuture<?>[] results = new CompletableFuture<?>[BURST_SIZE];
+		for (int i = 0; i < BURST_SIZE; i++)
+		{
+			results[i] = TransactionRegistry.submit(new SingleDirectiveTask(actors[i % actors.length], i), executor);
+		}
+		CompletableFuture.allOf(results).join();
+		return results[BURST_SIZE - 1].isDone();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST_SIZE)
+	public boolean submitToGroupCommitQueue()
+	{
+		CompletableFuture<?>[] results = new CompletableFuture<?>[BURST_SIZE];
+		for (int i = 0; i < BURST_SIZE; i++)
+		{
+			results[i] = queue.submit(new SingleDirectiveTask(actors[i % actors.length], i));
+		}
+		CompletableFuture.allOf(results).join();
+		return results[BURST_SIZE - 1].isDone();
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceDirective;
+import org.hawkinssoftware.azia.core.action.UserInterfaceNotification;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of broadcasting one directive's notification to a varying number of
+ * <code>ActorBasedContributor</code>s, with a second transaction joined to the session that requests the notification
+ * by type, so both the session loop and the contributor loop of <code>broadcastAction()</code> are exercised.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class NotificationFanoutBenchmark
+{
+	/**
+	 * Joins the session and requests every directive notification, counting what it receives.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	public static class ObservingTransaction extends GenericTransaction
+	{
+		int receivedCount = 0;
+
+		@Override
+		public void setSession(Session session)
+		{
+			super.setSession(session);
+
+			session.requestNotificationByType(UserInterfaceDirective.Notification.class);
+		}
+
+		@Override
+		public void postNotificationFromAnotherTransaction(UserInterfaceNotification notification)
+		{
+			receivedCount++;
+		}
+	}
+
+	/**
+	 * Posts a single directive to the actor, with the <code>ObservingTransaction</code> joined.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class BroadcastTask extends UserInterfaceTask
+	{
+		@Override
+		protected boolean execute()
+		{
+			getTransaction(ObservingTransaction.class);
+			getTransaction(GenericTransaction.class).addAction(new BenchmarkDirective(actor, contributorCount));
+			return true;
+		}
+	}
+
+	@Param({ "0", "1", "16", "256" })
+	int contributorCount;
+
+	private BenchmarkActor actor;
+	private BenchmarkContributor[] contributors;
+
+	@Setup
+	public void createActor() throws ConcurrentAccessException
+	{
+		actor = BenchmarkEnvironment.createActors(1, false)[0];
+		contributors = new BenchmarkContributor[contributorCount];
+		for (int i = 0; i < contributorCount; i++)
+		{
+			contributors[i] = new BenchmarkContributor();
+			TransactionRegistry.getInstance().addActorBasedContributor(actor, contributors[i]);
+		}
+	}
+
+	@Benchmark
+	public int broadcastAction() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new BroadcastTask());
+		return actor.getValue();
+	}
+}
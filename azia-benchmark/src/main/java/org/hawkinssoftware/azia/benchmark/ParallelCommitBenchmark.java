@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceActorDelegate;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Commits a session which posts 8 directives to each of several actors, each actor having its own lock, as a data
+ * feed event might update several independent panels. The commit of each directive costs a configurable amount of
+ * work, and the session is committed either sequentially or in parallel (system property <code>parallel-commit</code>).
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class ParallelCommitBenchmark
+{
+	private static final int DIRECTIVES_PER_ACTOR = 8;
+
+	/**
+	 * Consumes <code>commitWork</code> tokens of CPU time when committed.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class WeightedDirective extends BenchmarkDirective
+	{
+		WeightedDirective(UserInterfaceActorDelegate actor, int value)
+		{
+			super(actor, value);
+		}
+
+		@Override
+		public void commit()
+		{
+			Blackhole.consumeCPU(commitWork);
+			super.commit();
+		}
+	}
+
+	/**
+	 * Posts the directives to every actor, interleaved.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class FeedTask extends UserInterfaceTask
+	{
+		@Override
+		protected boolean execute()
+		{
+			GenericTransaction transaction = getTransaction(GenericTransaction.class);
+			for (int i = 0; i < DIRECTIVES_PER_ACTOR; i++)
+			{
+				for (BenchmarkActor actor : actors)
+				{
+					transaction.addAction(new WeightedDirective(actor, i));
+				}
+			}
+			return true;
+		}
+	}
+
+	@Param({ "2", "8" })
+	int actorCount;
+
+	@Param({ "0", "1000" })
+	int commitWork;
+
+	private BenchmarkActor[] actors;
+
+	@Setup
+	public void createActors() throws ConcurrentAccessException
+	{
+		actors = BenchmarkEnvironment.createActors(actorCount, false);
+	}
+
+	@Benchmark
+	@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+	public int sequential() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new FeedTask());
+		return actors[0].getValue();
+	}
+
+	@Benchmark
+	@Fork(value = 2, jvmArgsAppend = { BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION, BenchmarkEnvironment.PARALLEL_COMMIT })
+	public int parallel() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new FeedTask());
+		return actors[0].getValue();
+	}
+}
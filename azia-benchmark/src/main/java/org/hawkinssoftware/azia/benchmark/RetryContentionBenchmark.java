@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.RetryPolicy;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Four threads repeatedly lock two of a few actors in random order, so that their tasks frequently crosslock. The
+ * <code>retries</code> counter reports how many attempts were wasted under each <code>RetryPolicy</code>; the
+ * throughput shows whether the time spent backing off is recovered by avoiding repeat collisions. The
+ * <code>declared</code> configuration instead declares both actors up front, so they are locked in order and never
+ * collide.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+@Threads(4)
+public class RetryContentionBenchmark
+{
+	private static final int ACTOR_COUNT = 4;
+
+	/**
+	 * Counts the attempts of each thread which did not commit.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Collisions
+	{
+		public long retries;
+	}
+
+	/**
+	 * Assigns two actors in the given order, with some work between them to widen the window for a crosslock.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class CrossingTask extends UserInterfaceTask
+	{
+		private final BenchmarkActor first;
+		private final BenchmarkActor second;
+		private final Collisions collisions;
+		private boolean attempted = false;
+
+		CrossingTask(BenchmarkActor first, BenchmarkActor second, Collisions collisions)
+		{
+			this.first = first;
+			this.second = second;
+			this.collisions = collisions;
+			setRetryPolicy(retryPolicy);
+			setRetryCount(Integer.MAX_VALUE);
+			if (declared)
+			{
+				declareActors(first, second);
+			}
+		}
+
+		@Override
+		protected boolean execute()
+		{
+			if (attempted)
+			{
+				collisions.retries++;
+			}
+			attempted = true;
+
+			GenericTransaction transaction = getTransaction(GenericTransaction.class);
+			transaction.addAction(new BenchmarkDirective(first, 1));
+			Blackhole.consumeCPU(200);
+			transaction.addAction(new BenchmarkDirective(second, 2));
+			return true;
+		}
+	}
+
+	@Param({ "immediate", "yielding", "backoff", "declared" })
+	String policy;
+
+	private RetryPolicy retryPolicy;
+	private boolean declared;
+	private BenchmarkActor[] actors;
+
+	@Setup
+	public void createActors() throws ConcurrentAccessException
+	{
+		actors = BenchmarkEnvironment.createActors(ACTOR_COUNT, false);
+
+		if ("immediate".equals(policy))
+		{
+			retryPolicy = RetryPolicy.immediate();
+		}
+		else if ("yielding".equals(policy))
+		{
+			retryPolicy = RetryPolicy.yielding();
+		}
+		else
+		{
+			retryPolicy = RetryPolicy.getDefault();
+			declared = "declared".equals(policy);
+		}
+	}
+
+	@Benchmark
+	public void crossingTasks(Collisions collisions) throws ConcurrentAccessException
+	{
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(ACTOR_COUNT);
+		int second = (first + 1 + random.nextInt(ACTOR_COUNT - 1)) % ACTOR_COUNT;
+		TransactionRegistry.executeTask(new CrossingTask(actors[first], actors[second], collisions));
+	}
+}
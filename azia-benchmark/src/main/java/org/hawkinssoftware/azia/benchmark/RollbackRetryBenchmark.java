@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.RetryPolicy;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.CollisionStatus;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a committed task with one that rolls back and one that is failed once (as a crosslock victim would be) and
+ * then retried to completion. The difference between <code>commit</code> and <code>retry</code> is the cost of one
+ * wasted attempt, including the emergency release of its locks.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class RollbackRetryBenchmark
+{
+	private static final int ACTOR_COUNT = 8;
+
+	/**
+	 * Adds <code>directiveCount</code> directives and then fails, rolls back or commits as configured.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class OutcomeTask extends UserInterfaceTask
+	{
+		private final boolean commit;
+		private int failures;
+
+		OutcomeTask(boolean commit, int failures)
+		{
+			this.commit = commit;
+			this.failures = failures;
+
+			// the retry should cost only the wasted attempt, without any backoff
+			setRetryPolicy(RetryPolicy.immediate());
+		}
+
+		@Override
+		protected boolean execute()
+		{
+			GenericTransaction transaction = getTransaction(GenericTransaction.class);
+			for (int i = 0; i < directiveCount; i++)
+			{
+				transaction.addAction(new BenchmarkDirective(actors[i % actors.length], i));
+			}
+
+			if (failures > 0)
+			{
+				failures--;
+				TransactionRegistry.failCurrentTask(CollisionStatus.CROSSLOCK);
+			}
+			return commit;
+		}
+	}
+
+	@Param({ "1", "10" })
+	int directiveCount;
+
+	private BenchmarkActor[] actors;
+
+	@Setup
+	public void createActors() throws ConcurrentAccessException
+	{
+		actors = BenchmarkEnvironment.createActors(ACTOR_COUNT, false);
+	}
+
+	@Benchmark
+	public void commit() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new OutcomeTask(true, 0));
+	}
+
+	@Benchmark
+	public void rollback() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new OutcomeTask(false, 0));
+	}
+
+	@Benchmark
+	public void retry() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new OutcomeTask(true, 1));
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.TransactionRegistryCoordinator;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of minimal sessions on several threads, each posting one directive to its own actor, with a
+ * varying number of registered <code>TransactionRegistry.Listener</code>s and <code>PostProcessor</code>s. Every
+ * session consults the post-processors at each phase and the listeners for each joined transaction, so this exposes
+ * any per-session cost of reading the registrations.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+@Threads(4)
+public class SessionThroughputBenchmark
+{
+	/**
+	 * Ignores every transaction.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class IdleListener implements TransactionRegistry.Listener
+	{
+		@Override
+		public Class<? extends UserInterfaceTransaction> transactionInitiated(Class<? extends UserInterfaceTransaction> type)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Ignores every phase.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class IdlePostProcessor implements UserInterfaceTransaction.PostProcessor
+	{
+		@Override
+		public void sessionStarting()
+		{
+		}
+
+		@Override
+		public void sessionCommitted()
+		{
+		}
+
+		@Override
+		public void postProcessingCommitted()
+		{
+		}
+
+		@Override
+		public void transactionRolledBack()
+		{
+		}
+	}
+
+	/**
+	 * Owns one actor, so that the threads never contend for a lock.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@State(Scope.Thread)
+	public static class ThreadActor
+	{
+		BenchmarkActor actor;
+
+		@Setup
+		public void createActor() throws ConcurrentAccessException
+		{
+			actor = BenchmarkEnvironment.createActors(1, false)[0];
+		}
+	}
+
+	/**
+	 * Posts a single directive to the thread's actor.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class SingleDirectiveTask extends UserInterfaceTask
+	{
+		private final BenchmarkActor actor;
+
+		SingleDirectiveTask(BenchmarkActor actor)
+		{
+			this.actor = actor;
+		}
+
+		@Override
+		protected boolean execute()
+		{
+			getTransaction(GenericTransaction.class).addAction(new BenchmarkDirective(actor, 1));
+			return true;
+		}
+	}
+
+	@Param({ "0", "4", "16" })
+	int registrationCount;
+
+	private TransactionRegistry.Listener[] listeners;
+	private UserInterfaceTransaction.PostProcessor[] postProcessors;
+
+	@Setup
+	public void register()
+	{
+		BenchmarkEnvironment.initialize();
+
+		listeners = new TransactionRegistry.Listener[registrationCount];
+		postProcessors = new UserInterfaceTransaction.PostProcessor[registrationCount];
+		for (int i = 0; i < registrationCount; i++)
+		{
+			listeners[i] = new IdleListener();
+			postProcessors[i] = new IdlePostProcessor();
+			TransactionRegistryCoordinator.getInstance().addListener(listeners[i]);
+			TransactionRegistryCoordinator.getInstance().addPostProcessor(postProcessors[i]);
+		}
+	}
+
+	@TearDown
+	public void unregister()
+	{
+		for (int i = 0; i < registrationCount; i++)
+		{
+			TransactionRegistryCoordinator.getInstance().removeListener(listeners[i]);
+			TransactionRegistryCoordinator.getInstance().removePostProcessor(postProcessors[i]);
+		}
+	}
+
+	@Benchmark
+	public int executeTask(ThreadActor state) throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new SingleDirectiveTask(state.actor));
+		return state.actor.getValue();
+	}
+}
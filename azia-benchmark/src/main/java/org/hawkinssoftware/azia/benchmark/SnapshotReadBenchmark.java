@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One thread repeatedly commits new values to every actor while two others read all of them, as an export would,
+ * either in a task which locks the actors for the duration of the read, or from a
+ * <code>UserInterfaceTransactionQuery.Snapshot</code>, which takes no locks. The writer's throughput shows how much the
+ * readers obstruct commits, and the readers' throughput how much the commits obstruct them.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class SnapshotReadBenchmark
+{
+	private static final int ACTOR_COUNT = 64;
+
+	/**
+	 * Assigns the next value to every actor.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class WriteTask extends UserInterfaceTask
+	{
+		@Override
+		protected boolean execute()
+		{
+			GenericTransaction transaction = getTransaction(GenericTransaction.class);
+			int value = ++nextValue;
+			for (BenchmarkActor actor : actors)
+			{
+				transaction.addAction(new BenchmarkDirective(actor, value));
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Locks every actor and reads its value.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class LockedReadTask extends UserInterfaceTask
+	{
+		private final Blackhole blackhole;
+
+		LockedReadTask(Blackhole blackhole)
+		{
+			this.blackhole = blackhole;
+			declareActors(actors);
+		}
+
+		@Override
+		protected boolean execute()
+		{
+			for (BenchmarkActor actor : actors)
+			{
+				blackhole.consume(UserInterfaceTransactionQuery.start(actor).getTransactionalValue(BenchmarkActor.VALUE).getValue());
+			}
+			return true;
+		}
+	}
+
+	private BenchmarkActor[] actors;
+	// written only by the writer thread
+	private int nextValue;
+
+	@Setup
+	public void createActors() throws ConcurrentAccessException
+	{
+		actors = BenchmarkEnvironment.createActors(ACTOR_COUNT, true);
+		UserInterfaceTransactionQuery.trackVersions(BenchmarkActor.VALUE);
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(1)
+	public void lockedWriter() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new WriteTask());
+	}
+
+	@Benchmark
+	@Group("locked")
+	@GroupThreads(2)
+	public void lockedReader(Blackhole blackhole) throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new LockedReadTask(blackhole));
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(1)
+	public void snapshotWriter() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new WriteTask());
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(2)
+	public void snapshotReader(Blackhole blackhole)
+	{
+		try (UserInterfaceTransactionQuery.Snapshot snapshot = UserInterfaceTransactionQuery.openSnapshot())
+		{
+			for (BenchmarkActor actor : actors)
+			{
+				blackhole.consume(snapshot.start(actor).getTransactionalValue(BenchmarkActor.VALUE).getValue());
+			}
+		}
+	}
+}
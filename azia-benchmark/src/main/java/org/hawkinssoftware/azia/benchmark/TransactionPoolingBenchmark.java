@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a small session with and without transaction pooling, each in its own fork since the pooling mode is fixed
+ * at startup. Run with <code>-prof gc</code> to compare the allocation per session (<code>gc.alloc.rate.norm</code>).
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class TransactionPoolingBenchmark
+{
+	private static final int ACTOR_COUNT = 4;
+
+	/**
+	 * Adds one <code>BenchmarkDirective</code> per unit of <code>directiveCount</code>, spread across the actors.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class DirectiveTask extends UserInterfaceTask
+	{
+		@Override
+		protected boolean execute()
+		{
+			GenericTransaction transaction = getTransaction(GenericTransaction.class);
+			for (int i = 0; i < directiveCount; i++)
+			{
+				transaction.addAction(new BenchmarkDirective(actors[i % actors.length], i));
+			}
+			return true;
+		}
+	}
+
+	@Param({ "1", "10" })
+	int directiveCount;
+
+	private BenchmarkActor[] actors;
+
+	@Setup
+	public void createActors() throws ConcurrentAccessException
+	{
+		actors = BenchmarkEnvironment.createActors(ACTOR_COUNT, false);
+	}
+
+	@Benchmark
+	@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+	public int instantiating() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new DirectiveTask());
+		return actors[0].getValue();
+	}
+
+	@Benchmark
+	@Fork(value = 2, jvmArgsAppend = { BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION, BenchmarkEnvironment.POOL_TRANSACTIONS })
+	public int pooling() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new DirectiveTask());
+		return actors[0].getValue();
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures <code>UserInterfaceTransactionQuery.Node.getTransactionalValue()</code> from inside a task that has pending
+ * directives on the queried actor, with the actor either publishing previews of those directives or not. The task is
+ * rolled back, and its setup cost is amortized over <code>QUERY_COUNT</code> queries.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class TransactionQueryBenchmark
+{
+	private static final int QUERY_COUNT = 1000;
+	private static final int PENDING_DIRECTIVE_COUNT = 10;
+
+	/**
+	 * Pends a few directives on the actor and then queries its value repeatedly.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class QueryTask extends UserInterfaceTask
+	{
+		private final Blackhole blackhole;
+
+		QueryTask(Blackhole blackhole)
+		{
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		protected boolean execute()
+		{
+			GenericTransaction transaction = getTransaction(GenericTransaction.class);
+			for (int i = 0; i < PENDING_DIRECTIVE_COUNT; i++)
+			{
+				transaction.addAction(new BenchmarkDirective(actor, i));
+			}
+
+			for (int i = 0; i < QUERY_COUNT; i++)
+			{
+				blackhole.consume(UserInterfaceTransactionQuery.start(actor).getTransactionalValue(BenchmarkActor.VALUE).getValue());
+			}
+			return false;
+		}
+	}
+
+	@Param({ "false", "true" })
+	boolean previews;
+
+	private BenchmarkActor actor;
+
+	@Setup
+	public void createActor() throws ConcurrentAccessException
+	{
+		actor = BenchmarkEnvironment.createActors(1, previews)[0];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERY_COUNT)
+	public void getTransactionalValue(Blackhole blackhole) throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new QueryTask(blackhole));
+	}
+}
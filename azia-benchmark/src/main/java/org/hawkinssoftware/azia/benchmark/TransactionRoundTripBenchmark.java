@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the full <code>TransactionRegistry.executeTask()</code> round trip--session setup, assembly locking,
+ * broadcast, commit and post-processing--for a <code>GenericTransaction</code> carrying a varying number of directives.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class TransactionRoundTripBenchmark
+{
+	private static final int ACTOR_COUNT = 16;
+
+	/**
+	 * Adds one <code>BenchmarkDirective</code> per unit of <code>directiveCount</code>, spread across the actors.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class DirectiveTask extends UserInterfaceTask
+	{
+		@Override
+		protected boolean execute()
+		{
+			GenericTransaction transaction = getTransaction(GenericTransaction.class);
+			for (int i = 0; i < directiveCount; i++)
+			{
+				transaction.addAction(new BenchmarkDirective(actors[i % actors.length], i));
+			}
+			return true;
+		}
+	}
+
+	@Param({ "1", "10", "1000" })
+	int directiveCount;
+
+	private BenchmarkActor[] actors;
+
+	@Setup
+	public void createActors() throws ConcurrentAccessException
+	{
+		actors = BenchmarkEnvironment.createActors(ACTOR_COUNT, false);
+	}
+
+	@Benchmark
+	public int executeTask() throws ConcurrentAccessException
+	{
+		TransactionRegistry.executeTask(new DirectiveTask());
+		return actors[0].getValue();
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hawkinssoftware.azia.core.action.GenericTransaction;
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Executes 10,000 concurrent single-directive tasks, each on its own virtual thread, or on a pool of platform threads
+ * for comparison. With few actors the tasks contend for the actor locks, so this measures lock waits that park the
+ * virtual thread, as well as the cost of creating and releasing the transaction state of each thread. The virtual
+ * configuration requires Java 21: on an earlier JVM its setup fails before any actor is created, with a message
+ * naming the JVM, and only the platform configuration can be run (<code>-p threads=platform</code>). Run with
+ * <code>-jvmArgsAppend -Djdk.tracePinnedThreads=full</code> to report any carrier pinning.
+ * 
+ * @author Byron Hawkins
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 4)
+@Fork(value = 2, jvmArgsAppend = BenchmarkEnvironment.DISABLE_ACCESS_VALIDATION)
+public class VirtualThreadTaskBenchmark
+{
+	private static final int TASK_COUNT = 10000;
+
+	/**
+	 * Executes one task adding a directive to one actor, counting down when done.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private class DirectiveTask extends UserInterfaceTask implements Runnable
+	{
+		private final BenchmarkActor actor;
+		private final int value;
+		private final CountDownLatch done;
+
+		DirectiveTask(BenchmarkActor actor, int value, CountDownLatch done)
+		{
+			this.actor = actor;
+			this.value = value;
+			this.done = done;
+		}
+
+		@Override
+		protected boolean execute()
+		{
+			getTransaction(GenericTransaction.class).addAction(new BenchmarkDirective(actor, value));
+			return true;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				TransactionRegistry.executeTask(this);
+			}
+			catch (ConcurrentAccessException e)
+			{
+				failures.incrementAndGet();
+			}
+			finally
+			{
+				done.countDown();
+			}
+		}
+	}
+
+	@Param({ "virtual", "platform" })
+	String threads;
+
+	@Param({ "16", "1024" })
+	int actorCount;
+
+	private final AtomicInteger failures = new AtomicInteger();
+
+	private BenchmarkActor[] actors;
+	private ExecutorService executor;
+
+	@Setup
+	public void createExecutor() throws Exception
+	{
+		if ("virtual".equals(threads))
+		{
+			Method newVirtualThreadPerTaskExecutor;
+			try
+			{
+				newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			}
+			catch (NoSuchMethodException e)
+			{
+				throw new UnsupportedOperationException("The virtual configuration requires Java 21, but this JVM is Java "
+						+ System.getProperty("java.version") + "; run with -p threads=platform instead.");
+			}
+			executor = (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+		}
+		else
+		{
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+		}
+
+		actors = BenchmarkEnvironment.createActors(actorCount, false);
+	}
+
+	@TearDown
+	public void shutdownExecutor() throws InterruptedException
+	{
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	@Benchmark
+	public int executeConcurrentTasks() throws InterruptedException
+	{
+		CountDownLatch done = new CountDownLatch(TASK_COUNT);
+		for (int i = 0; i < TASK_COUNT; i++)
+		{
+			executor.execute(new DirectiveTask(actors[i % actors.length], i, done));
+		}
+		done.await();
+
+		if (failures.get() > 0)
+		{
+			throw new IllegalStateException(failures.get() + " tasks failed to complete.");
+		}
+		return TransactionRegistry.getLiveContextCount();
+	}
+}
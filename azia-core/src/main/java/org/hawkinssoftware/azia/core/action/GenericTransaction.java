@@ -11,7 +11,9 @@
 package org.hawkinssoftware.azia.core.action;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A simple transaction for use in UI operations that have no special transaction requirements or behaviors. All
@@ -19,12 +21,25 @@ import java.util.List;
  * added to the transaction, interleaving owner directives with contributed directives. It is not recommended that any
  * sub-transactions be spawned from a GenericTransaction, since nothing can be known about the purpose of a
  * GenericTransaction.
+ * <p>
+ * A directive implementing <code>UserInterfaceDirective.Coalescing</code> is merged with the last directive on the same
+ * actor, if that one is also coalescing with an equal merge key and its notification has not yet been broadcast. The
+ * merged directive takes the place of the later one in the commit order, and its notification replaces that of the
+ * earlier one. Since only the last directive on an actor is ever merged, the merge passes no other directive on that
+ * actor, and the commit has the same result as without merging. Once the notification of a coalescing directive has
+ * been broadcast, the contributors have responded to it, so the next directive with the same merge key begins a new
+ * run.
  * 
  * @author Byron Hawkins
  */
-public class GenericTransaction implements UserInterfaceTransaction
+@UserInterfaceTransaction.Resettable.Pooled
+public class GenericTransaction implements UserInterfaceTransaction.Resettable, UserInterfaceTransaction.Partitionable
 {
+	// a merged directive leaves null in the position of its predecessor
 	private final List<UserInterfaceDirective> transaction = new ArrayList<UserInterfaceDirective>();
+	// position in the transaction of the last directive on each actor, while that directive is coalescing; any other
+	// directive on the actor replaces or removes the entry, so no later directive can merge across it
+	private final Map<UserInterfaceActor, Integer> coalescing = new IdentityHashMap<UserInterfaceActor, Integer>();
 	private Session session;
 
 	@Override
@@ -35,6 +50,52 @@ public class GenericTransaction implements UserInterfaceTransaction
 
 	public void addAction(UserInterfaceDirective action)
 	{
+		add(action);
+	}
+
+	private void add(UserInterfaceDirective action)
+	{
+		UserInterfaceActor actor = action.getActor();
+		if (action instanceof UserInterfaceDirective.Coalescing)
+		{
+			Integer index = coalescing.get(actor);
+			UserInterfaceDirective predecessor = (index == null) ? null : transaction.get(index);
+			if ((predecessor != null)
+					&& ((UserInterfaceDirective.Coalescing) predecessor).getMergeKey().equals(
+							((UserInterfaceDirective.Coalescing) action).getMergeKey()))
+			{
+				UserInterfaceDirective merged = ((UserInterfaceDirective.Coalescing) predecessor).merge(action);
+				if (merged != null)
+				{
+					if (merged.getActor() != actor)
+					{
+						throw new IllegalStateException("Directive " + predecessor.getClass().getName() + " merged into a directive on another actor.");
+					}
+
+					// the merge is discarded if the predecessor's notification has already been broadcast
+					if (session.replaceAction(predecessor, merged))
+					{
+						transaction.set(index, null);
+						transaction.add(merged);
+						if (merged instanceof UserInterfaceDirective.Coalescing)
+						{
+							coalescing.put(actor, transaction.size() - 1);
+						}
+						else
+						{
+							coalescing.remove(actor);
+						}
+						return;
+					}
+				}
+			}
+			coalescing.put(actor, transaction.size());
+		}
+		else
+		{
+			coalescing.remove(actor);
+		}
+
 		transaction.add(action);
 		session.postAction(action);
 	}
@@ -55,7 +116,7 @@ public class GenericTransaction implements UserInterfaceTransaction
 		for (int i = transaction.size() - 1; i >= 0; i--)
 		{
 			UserInterfaceDirective action = transaction.get(i);
-			if (action.getActor() == actor)
+			if ((action != null) && (action.getActor() == actor))
 			{
 				actions.add(action);
 			}
@@ -67,8 +128,7 @@ public class GenericTransaction implements UserInterfaceTransaction
 	{
 		for (UserInterfaceDirective action : actions)
 		{
-			transaction.add(action);
-			session.postAction(action);
+			add(action);
 		}
 	}
 
@@ -90,6 +150,30 @@ public class GenericTransaction implements UserInterfaceTransaction
 	public void commitTransaction()
 	{
 		for (UserInterfaceDirective action : transaction)
+		{
+			if (action != null)
+			{
+				action.commit();
+			}
+		}
+	}
+
+	@Override
+	public void addDirectivesInCommitOrder(List<UserInterfaceDirective> directives)
+	{
+		for (UserInterfaceDirective action : transaction)
+		{
+			if (action != null)
+			{
+				directives.add(action);
+			}
+		}
+	}
+
+	@Override
+	public void commitDirectives(List<UserInterfaceDirective> directives)
+	{
+		for (UserInterfaceDirective action : directives)
 		{
 			action.commit();
 		}
@@ -105,4 +189,12 @@ public class GenericTransaction implements UserInterfaceTransaction
 	{
 		return transaction.isEmpty();
 	}
+
+	@Override
+	public void reset()
+	{
+		transaction.clear();
+		coalescing.clear();
+		session = null;
+	}
 }
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.action;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask.ConcurrentAccessException;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
+import org.hawkinssoftware.azia.core.log.AziaLogging.Tag;
+import org.hawkinssoftware.rns.core.log.Log;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Queues processing tasks and executes them in batches on a thread of an <code>Executor</code>, each batch within a
+ * single session: the tasks share one assembly phase, and their transactions are committed together by one
+ * <code>commitSession()</code>. A batch is executed as soon as <code>maxBatchSize</code> tasks are queued, or
+ * <code>maxLatency</code> after the first of them was queued, whichever comes first. This amortizes the per-session cost
+ * of locking, commit and post-processing over many small tasks, at the price of the latency spent waiting for a batch.
+ * 
+ * All tasks of a batch commit or none do. When the batch rolls back (because any task in it returned
+ * <code>false</code>), or exhausts its retries, each of its tasks is executed again on its own, so the outcome of every
+ * task is the same as if it had been submitted individually; a task in a failed batch must therefore tolerate being
+ * executed twice. The actors declared by the tasks of a batch are all locked before it executes, and the batch is
+ * retried no more often, and no sooner, than the most conservative of its tasks' retry policies allows.
+ * 
+ * When a task of the batch throws, its future is completed with the exception, and the other tasks are executed on
+ * their own. Any other failure of the batch, such as an exception thrown by its commit, cannot be attributed to one
+ * task, so it is logged and completes the futures of the whole batch.
+ * 
+ * Post-processing tasks are not batched, and are submitted individually to the <code>Executor</code>.
+ * 
+ * @author Byron Hawkins
+ */
+@DomainRole.Join(membership = TransactionFacilitation.class)
+public class GroupCommitQueue
+{
+	/**
+	 * A queued task and the future of its outcome.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Entry
+	{
+		final UserInterfaceTask task;
+		final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+
+		Entry(UserInterfaceTask task)
+		{
+			this.task = task;
+		}
+	}
+
+	/**
+	 * Executes the tasks of a batch in sequence within its own session.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@DomainRole.Join(membership = TransactionFacilitation.class)
+	private static class BatchTask extends UserInterfaceTask
+	{
+		private final List<Entry> entries;
+
+		// the entry whose task is executing, left set when it throws
+		private Entry failedEntry = null;
+
+		BatchTask(List<Entry> entries)
+		{
+			this.entries = entries;
+
+			Set<UserInterfaceActor> declaredActors = new LinkedHashSet<UserInterfaceActor>();
+			List<RetryPolicy> retryPolicies = new ArrayList<RetryPolicy>(entries.size());
+			int retryCount = Integer.MAX_VALUE;
+			long lockWaitLimit = 0L;
+			for (Entry entry : entries)
+			{
+				declaredActors.addAll(entry.task.getDeclaredActors());
+				retryPolicies.add(entry.task.getRetryPolicy());
+				retryCount = Math.min(retryCount, entry.task.getRetryCount());
+				long taskLimit = entry.task.getLockWaitLimit();
+				if ((taskLimit > 0L) && ((lockWaitLimit == 0L) || (taskLimit < lockWaitLimit)))
+				{
+					lockWaitLimit = taskLimit;
+				}
+			}
+
+			declareActors(declaredActors.toArray(new UserInterfaceActor[declaredActors.size()]));
+			setRetryCount(retryCount);
+			setRetryPolicy(RetryPolicy.mostConservative(retryPolicies));
+			if (lockWaitLimit > 0L)
+			{
+				setLockWaitLimit(lockWaitLimit, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		@Override
+		protected boolean execute()
+		{
+			for (Entry entry : entries)
+			{
+				failedEntry = entry;
+				entry.task.setSession(getSession());
+				try
+				{
+					if (!entry.task.execute())
+					{
+						return false;
+					}
+				}
+				finally
+				{
+					entry.task.setSession(null);
+				}
+			}
+			failedEntry = null;
+			return true;
+		}
+	}
+
+	private final Executor executor;
+	private final int maxBatchSize;
+	private final long maxLatency;
+
+	private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+	private final AtomicInteger queueSize = new AtomicInteger();
+	private final AtomicBoolean timerArmed = new AtomicBoolean();
+	private final AtomicBoolean draining = new AtomicBoolean();
+
+	private final Runnable drain = new Runnable() {
+		@Override
+		public void run()
+		{
+			drain();
+		}
+	};
+
+	private final Runnable timeout = new Runnable() {
+		@Override
+		public void run()
+		{
+			timerArmed.set(false);
+			scheduleDrain();
+		}
+	};
+
+	/**
+	 * @param maxBatchSize
+	 *            the number of queued tasks which causes a batch to be executed immediately
+	 * @param maxLatency
+	 *            the longest time a task waits in the queue for a batch to fill
+	 */
+	public GroupCommitQueue(Executor executor, int maxBatchSize, long maxLatency, TimeUnit unit)
+	{
+		if (maxBatchSize < 1)
+		{
+			throw new IllegalArgumentException("The maximum batch size must be at least 1.");
+		}
+
+		this.executor = executor;
+		this.maxBatchSize = maxBatchSize;
+		this.maxLatency = unit.toNanos(maxLatency);
+	}
+
+	/**
+	 * Queue <code>task</code> for execution in the next batch, without blocking the caller.
+	 * 
+	 * @return a future completed with <code>true</code> if the task committed, or <code>false</code> if it rolled
+	 *         back; or completed exceptionally with a <code>ConcurrentAccessException</code> if it exhausts its
+	 *         retries, or with any exception thrown by the task or by the <code>Executor</code>
+	 */
+	public CompletableFuture<Boolean> submit(UserInterfaceTask task)
+	{
+		if (task.type != UserInterfaceTask.Type.PROCESSING)
+		{
+			return TransactionRegistry.submit(task, executor);
+		}
+
+		Entry entry = new Entry(task);
+		queue.add(entry);
+		if (queueSize.incrementAndGet() >= maxBatchSize)
+		{
+			scheduleDrain();
+		}
+		else if ((maxLatency <= 0L) || draining.get())
+		{
+			// a running drain will find the entry
+			scheduleDrain();
+		}
+		else if (timerArmed.compareAndSet(false, true))
+		{
+			TransactionRegistry.RetryScheduler.INSTANCE.schedule(timeout, maxLatency, TimeUnit.NANOSECONDS);
+		}
+		return entry.result;
+	}
+
+	private void scheduleDrain()
+	{
+		if (draining.compareAndSet(false, true))
+		{
+			try
+			{
+				executor.execute(drain);
+			}
+			catch (RejectedExecutionException e)
+			{
+				draining.set(false);
+				Entry entry;
+				while ((entry = poll()) != null)
+				{
+					entry.result.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	private Entry poll()
+	{
+		Entry entry = queue.poll();
+		if (entry != null)
+		{
+			queueSize.decrementAndGet();
+		}
+		return entry;
+	}
+
+	private void drain()
+	{
+		do
+		{
+			try
+			{
+				List<Entry> batch = new ArrayList<Entry>(maxBatchSize);
+				Entry entry;
+				while ((entry = poll()) != null)
+				{
+					batch.add(entry);
+					if (batch.size() == maxBatchSize)
+					{
+						executeBatch(batch);
+						batch = new ArrayList<Entry>(maxBatchSize);
+					}
+				}
+				if (!batch.isEmpty())
+				{
+					executeBatch(batch);
+				}
+			}
+			finally
+			{
+				draining.set(false);
+			}
+		}
+		// an entry queued after the last poll, but before the release, may have found the drain still running
+		while (!queue.isEmpty() && draining.compareAndSet(false, true));
+	}
+
+	private void executeBatch(List<Entry> batch)
+	{
+		if (batch.size() > 1)
+		{
+			BatchTask batchTask = new BatchTask(batch);
+			try
+			{
+				if (TransactionRegistry.executeOutermostTask(batchTask))
+				{
+					for (Entry entry : batch)
+					{
+						entry.result.complete(true);
+					}
+					return;
+				}
+			}
+			catch (ConcurrentAccessException e)
+			{
+				// the batch exhausted its retries: each task is executed on its own below, to find its individual outcome
+			}
+			catch (Throwable t)
+			{
+				if (batchTask.failedEntry == null)
+				{
+					Log.out(Tag.CRITICAL, t, "Failed to execute a batch of %d tasks", batch.size());
+					for (Entry entry : batch)
+					{
+						entry.result.completeExceptionally(t);
+					}
+					return;
+				}
+
+				// the other tasks were rolled back with the batch
+				batchTask.failedEntry.result.completeExceptionally(t);
+				batch = new ArrayList<Entry>(batch);
+				batch.remove(batchTask.failedEntry);
+			}
+		}
+
+		for (Entry entry : batch)
+		{
+			try
+			{
+				entry.result.complete(TransactionRegistry.executeOutermostTask(entry.task));
+			}
+			catch (Throwable t)
+			{
+				entry.result.completeExceptionally(t);
+			}
+		}
+	}
+}
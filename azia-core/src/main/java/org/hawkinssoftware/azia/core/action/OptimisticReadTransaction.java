@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.action;
+
+import org.hawkinssoftware.azia.core.lock.LockRegistry;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * A <code>ReadOnlyTransaction</code> which reads the actors of its session optimistically, for tasks reading many
+ * actors which would otherwise hold their read locks, and block their committers, for the duration of the task. The
+ * reads take no lock; instead the version of each actor's lock is validated when the session commits, and if any of
+ * them has been committed by another session in the meantime, the task is transparently retried. Reads made by the
+ * session before it joins this transaction are locked as usual.
+ * 
+ * @author Byron Hawkins
+ */
+@UserInterfaceTransaction.Resettable.Pooled
+@DomainRole.Join(membership = UserInterfaceTransactionDomains.TransactionElement.class)
+public class OptimisticReadTransaction extends ReadOnlyTransaction
+{
+	@Override
+	public void setSession(Session session)
+	{
+		super.setSession(session);
+
+		if (session != null)
+		{
+			LockRegistry.getInstance().beginOptimisticReads();
+		}
+	}
+}
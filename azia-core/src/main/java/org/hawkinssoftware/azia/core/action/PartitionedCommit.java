@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.action;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
+import org.hawkinssoftware.azia.core.lock.LockRegistry;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Commits the directives of a session's <code>UserInterfaceTransaction.Partitionable</code> transactions concurrently,
+ * partitioned by the <code>AutonomousLock</code> of their actors. Each partition is committed in the order of the
+ * sequential commit, so the directives on any one lock are applied in the same order either way. The committing thread
+ * holds all the commit locks and commits one share of the partitions itself, and does not return until every share is
+ * committed, so the commit of the session remains atomic. Each share is committed under a
+ * <code>LockRegistry.CommitDelegation</code> confined to its own partitions, so that a directive whose commit reaches
+ * into another partition is reported rather than racing with the thread committing it.
+ * 
+ * @author Byron Hawkins
+ */
+@DomainRole.Join(membership = TransactionFacilitation.class)
+final class PartitionedCommit
+{
+	private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	// lazily started on the first parallel commit
+	/**
+	 * Holds the pool of daemon threads which commit the delegated shares of a parallel commit.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class CommitPool
+	{
+		static final ForkJoinPool INSTANCE = new ForkJoinPool(PARALLELISM, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+			{
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("Azia Commit Worker " + thread.getPoolIndex());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, null, false);
+	}
+
+	private static final ClassValue<Boolean> PARTITIONABLE = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> transactionType)
+		{
+			if (!UserInterfaceTransaction.Partitionable.class.isAssignableFrom(transactionType))
+			{
+				return false;
+			}
+			try
+			{
+				// the contract is not inherited by an override of commitTransaction()
+				return transactionType.getMethod("commitTransaction").getDeclaringClass() == transactionType.getMethod("commitDirectives", List.class)
+						.getDeclaringClass();
+			}
+			catch (NoSuchMethodException e)
+			{
+				throw new IllegalStateException("Failed to resolve the commit methods of " + transactionType.getName(), e);
+			}
+		}
+	};
+
+	/**
+	 * The directives of one transaction within a partition.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Segment
+	{
+		final UserInterfaceTransaction.Partitionable transaction;
+		final List<UserInterfaceDirective> directives = new ArrayList<UserInterfaceDirective>();
+
+		Segment(UserInterfaceTransaction.Partitionable transaction)
+		{
+			this.transaction = transaction;
+		}
+	}
+
+	/**
+	 * The directives on the actors of one lock, in commit order.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Partition
+	{
+		final Object lock;
+		final List<Segment> segments = new ArrayList<Segment>();
+
+		Partition(Object lock)
+		{
+			this.lock = lock;
+		}
+
+		void add(UserInterfaceTransaction.Partitionable transaction, UserInterfaceDirective directive)
+		{
+			Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+			if ((segment == null) || (segment.transaction != transaction))
+			{
+				segment = new Segment(transaction);
+				segments.add(segment);
+			}
+			segment.directives.add(directive);
+		}
+
+		void commit()
+		{
+			for (Segment segment : segments)
+			{
+				segment.transaction.commitDirectives(segment.directives);
+			}
+		}
+	}
+
+	/**
+	 * The partitions committed by one thread.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@SuppressWarnings("serial")
+	private static class Share extends RecursiveAction
+	{
+		final LockRegistry.CommitDelegation delegation;
+		final List<Partition> partitions = new ArrayList<Partition>();
+
+		Share(LockRegistry.CommitDelegation delegation)
+		{
+			this.delegation = delegation;
+		}
+
+		void commit()
+		{
+			List<Object> locks = new ArrayList<Object>(partitions.size());
+			for (Partition partition : partitions)
+			{
+				locks.add(partition.lock);
+			}
+
+			delegation.begin(locks);
+			try
+			{
+				for (Partition partition : partitions)
+				{
+					partition.commit();
+				}
+			}
+			finally
+			{
+				delegation.end();
+			}
+		}
+
+		@Override
+		protected void compute()
+		{
+			commit();
+		}
+	}
+
+	/**
+	 * Commit the non-empty <code>transactions</code> in parallel, if they are all partitionable and their directives
+	 * span more than one lock. Must be called by the session thread while it holds its commit locks.
+	 * 
+	 * @return false if nothing was committed, because the transactions must be committed sequentially
+	 */
+	static boolean commit(Collection<? extends UserInterfaceTransaction> transactions)
+	{
+		if (PARALLELISM < 2)
+		{
+			return false;
+		}
+
+		LockRegistry.CommitDelegation delegation = null;
+		Map<Object, Partition> partitionsByLock = new LinkedHashMap<Object, Partition>();
+		List<UserInterfaceDirective> directives = new ArrayList<UserInterfaceDirective>();
+		for (UserInterfaceTransaction transaction : transactions)
+		{
+			if (transaction.isEmpty())
+			{
+				continue;
+			}
+			if (!PARTITIONABLE.get(transaction.getClass()))
+			{
+				return false;
+			}
+
+			UserInterfaceTransaction.Partitionable partitionable = (UserInterfaceTransaction.Partitionable) transaction;
+			if (delegation == null)
+			{
+				delegation = LockRegistry.getInstance().delegateCommit();
+			}
+			directives.clear();
+			partitionable.addDirectivesInCommitOrder(directives);
+			for (UserInterfaceDirective directive : directives)
+			{
+				Object lock = delegation.getPartition(directive.getActor());
+				if (lock == null)
+				{
+					return false;
+				}
+
+				Partition partition = partitionsByLock.get(lock);
+				if (partition == null)
+				{
+					partition = new Partition(lock);
+					partitionsByLock.put(lock, partition);
+				}
+				partition.add(partitionable, directive);
+			}
+		}
+		if (partitionsByLock.size() < 2)
+		{
+			return false;
+		}
+
+		Share[] shares = new Share[Math.min(partitionsByLock.size(), PARALLELISM)];
+		for (int i = 0; i < shares.length; i++)
+		{
+			shares[i] = new Share(delegation);
+		}
+		int index = 0;
+		for (Partition partition : partitionsByLock.values())
+		{
+			shares[index++ % shares.length].partitions.add(partition);
+		}
+
+		for (int i = 1; i < shares.length; i++)
+		{
+			CommitPool.INSTANCE.execute(shares[i]);
+		}
+
+		// every share must be complete before the caller releases the commit locks, even if one fails
+		Throwable failure = null;
+		try
+		{
+			shares[0].commit();
+		}
+		catch (Throwable t)
+		{
+			failure = t;
+		}
+		for (int i = 1; i < shares.length; i++)
+		{
+			try
+			{
+				shares[i].join();
+			}
+			catch (Throwable t)
+			{
+				if (failure == null)
+				{
+					failure = t;
+				}
+			}
+		}
+
+		if (failure instanceof RuntimeException)
+		{
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error)
+		{
+			throw (Error) failure;
+		}
+		return true;
+	}
+
+	private PartitionedCommit()
+	{
+	}
+}
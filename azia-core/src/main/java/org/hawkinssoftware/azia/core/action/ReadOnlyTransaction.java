@@ -19,8 +19,9 @@ import org.hawkinssoftware.rns.core.role.DomainRole;
  * 
  * @author Byron Hawkins
  */
+@UserInterfaceTransaction.Resettable.Pooled
 @DomainRole.Join(membership = UserInterfaceTransactionDomains.TransactionElement.class)
-public class ReadOnlyTransaction implements UserInterfaceTransaction
+public class ReadOnlyTransaction implements UserInterfaceTransaction.Resettable
 {
 	private Session session;
 
@@ -78,4 +79,10 @@ public class ReadOnlyTransaction implements UserInterfaceTransaction
 	{
 		return true;
 	}
+
+	@Override
+	public void reset()
+	{
+		session = null;
+	}
 }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.action;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionElement;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Determines when a <code>UserInterfaceTask</code> which collided with another is attempted again, and whether it is
+ * attempted at all. The number of retries is bounded separately by <code>UserInterfaceTask.getRetryCount()</code>.
+ * Two tasks which collide and retry immediately tend to collide again, so the default policy backs off exponentially
+ * with random jitter, which spreads their next attempts apart.
+ * 
+ * @author Byron Hawkins
+ * @see UserInterfaceTask#setRetryPolicy(RetryPolicy)
+ */
+@DomainRole.Join(membership = TransactionElement.class)
+public abstract class RetryPolicy
+{
+	/**
+	 * Retries as soon as the failed attempt has been rolled back.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Immediate extends RetryPolicy
+	{
+		@Override
+		public long getRetryDelay(int retryCount)
+		{
+			return 0L;
+		}
+	}
+
+	/**
+	 * Yields the thread once before retrying, giving the colliding thread a chance to proceed.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Yielding extends RetryPolicy
+	{
+		@Override
+		public long getRetryDelay(int retryCount)
+		{
+			return 0L;
+		}
+
+		@Override
+		public void awaitRetry(int retryCount)
+		{
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Waits for a random duration of up to <code>initialDelay * 2^retryCount</code>, capped at
+	 * <code>maximumDelay</code>. The randomization of the full range ("full jitter") de-correlates tasks which failed
+	 * together, where a fixed backoff would only postpone their next collision.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class ExponentialBackoff extends RetryPolicy
+	{
+		private final long initialDelay;
+		private final long maximumDelay;
+
+		ExponentialBackoff(long initialDelay, long maximumDelay)
+		{
+			this.initialDelay = initialDelay;
+			this.maximumDelay = maximumDelay;
+		}
+
+		@Override
+		public long getRetryDelay(int retryCount)
+		{
+			long ceiling = maximumDelay;
+			if (retryCount < 62)
+			{
+				ceiling = Math.min(maximumDelay, initialDelay << retryCount);
+				if (ceiling <= 0)
+				{
+					ceiling = maximumDelay;
+				}
+			}
+			return ThreadLocalRandom.current().nextLong(ceiling + 1);
+		}
+	}
+
+	/**
+	 * Delegates to another policy, but gives up once the task has been attempted for longer than the deadline.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Deadline extends RetryPolicy
+	{
+		private final long deadline;
+		private final RetryPolicy delegate;
+
+		Deadline(long deadline, RetryPolicy delegate)
+		{
+			this.deadline = deadline;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public boolean allowRetry(int retryCount, long elapsed)
+		{
+			return (elapsed < deadline) && delegate.allowRetry(retryCount, elapsed);
+		}
+
+		@Override
+		public long getRetryDelay(int retryCount)
+		{
+			return delegate.getRetryDelay(retryCount);
+		}
+
+		@Override
+		public void awaitRetry(int retryCount)
+		{
+			delegate.awaitRetry(retryCount);
+		}
+	}
+
+	/**
+	 * Combines the policies of several tasks executed together: a retry is allowed only when every policy allows it,
+	 * and waits for the longest delay of any of them, yielding at least once.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class MostConservative extends RetryPolicy
+	{
+		private final RetryPolicy[] policies;
+
+		MostConservative(RetryPolicy[] policies)
+		{
+			this.policies = policies;
+		}
+
+		@Override
+		public boolean allowRetry(int retryCount, long elapsed)
+		{
+			for (RetryPolicy policy : policies)
+			{
+				if (!policy.allowRetry(retryCount, elapsed))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public long getRetryDelay(int retryCount)
+		{
+			long delay = 0L;
+			for (RetryPolicy policy : policies)
+			{
+				delay = Math.max(delay, policy.getRetryDelay(retryCount));
+			}
+			return delay;
+		}
+
+		@Override
+		public void awaitRetry(int retryCount)
+		{
+			long delay = getRetryDelay(retryCount);
+			if (delay > 0L)
+			{
+				LockSupport.parkNanos(delay);
+			}
+			else
+			{
+				Thread.yield();
+			}
+		}
+	}
+
+	private static final RetryPolicy IMMEDIATE = new Immediate();
+	private static final RetryPolicy YIELDING = new Yielding();
+	private static final RetryPolicy DEFAULT = exponentialBackoff(50, 10000, TimeUnit.MICROSECONDS);
+
+	public static RetryPolicy getDefault()
+	{
+		return DEFAULT;
+	}
+
+	public static RetryPolicy immediate()
+	{
+		return IMMEDIATE;
+	}
+
+	public static RetryPolicy yielding()
+	{
+		return YIELDING;
+	}
+
+	public static RetryPolicy exponentialBackoff(long initialDelay, long maximumDelay, TimeUnit unit)
+	{
+		if ((initialDelay <= 0) || (maximumDelay < initialDelay))
+		{
+			throw new IllegalArgumentException("Invalid backoff from " + initialDelay + " to " + maximumDelay + " " + unit);
+		}
+		return new ExponentialBackoff(unit.toNanos(initialDelay), unit.toNanos(maximumDelay));
+	}
+
+	/**
+	 * Retry according to <code>delegate</code> until <code>deadline</code> has elapsed since the first attempt.
+	 */
+	public static RetryPolicy deadline(long deadline, TimeUnit unit, RetryPolicy delegate)
+	{
+		return new Deadline(unit.toNanos(deadline), delegate);
+	}
+
+	/**
+	 * The most conservative of <code>policies</code>, for a batch of tasks which is retried as a whole.
+	 */
+	static RetryPolicy mostConservative(List<RetryPolicy> policies)
+	{
+		RetryPolicy first = policies.get(0);
+		for (RetryPolicy policy : policies)
+		{
+			if (policy != first)
+			{
+				return new MostConservative(policies.toArray(new RetryPolicy[policies.size()]));
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * @param retryCount
+	 *            the number of retries already made
+	 * @param elapsed
+	 *            nanoseconds since the first attempt of the task began
+	 * @return whether the task may be attempted again
+	 */
+	public boolean allowRetry(int retryCount, long elapsed)
+	{
+		return true;
+	}
+
+	/**
+	 * @param retryCount
+	 *            the number of retries already made
+	 * @return nanoseconds to wait before the next attempt
+	 */
+	public abstract long getRetryDelay(int retryCount);
+
+	/**
+	 * Block the calling thread until the next attempt may begin. A task submitted to an <code>Executor</code> is
+	 * instead rescheduled after <code>getRetryDelay()</code>, without blocking.
+	 */
+	public void awaitRetry(int retryCount)
+	{
+		long delay = getRetryDelay(retryCount);
+		if (delay > 0L)
+		{
+			LockSupport.parkNanos(delay);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.action;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder events of the <code>UserInterfaceTransactionSession</code>. The fields are only assigned when an
+ * event will be committed, so a disabled event costs next to nothing.
+ * 
+ * @author Byron Hawkins
+ */
+final class SessionEvents
+{
+	/**
+	 * A session began on behalf of its outermost task, either lazily or to lock the declared actors of the task.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@Name("org.hawkinssoftware.azia.SessionBegin")
+	@Label("Session Begin")
+	@Category({ "Azia", "Transaction" })
+	@StackTrace(false)
+	static class Begin extends Event
+	{
+		@Label("Task Type")
+		Class<?> taskType;
+	}
+
+	/**
+	 * Spans the commit phase of a session, from acquisition of the commit locks through their release.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@Name("org.hawkinssoftware.azia.SessionCommit")
+	@Label("Session Commit")
+	@Category({ "Azia", "Transaction" })
+	@StackTrace(false)
+	static class Commit extends Event
+	{
+		@Label("Task Type")
+		Class<?> taskType;
+
+		@Label("Transaction Types")
+		String transactionTypes;
+
+		@Label("Directives")
+		int directiveCount;
+	}
+
+	/**
+	 * Spans the post-processing phase of a session, including the commit of the post-processing transactions.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@Name("org.hawkinssoftware.azia.SessionPostProcessing")
+	@Label("Session Post-Processing")
+	@Category({ "Azia", "Transaction" })
+	@StackTrace(false)
+	static class PostProcessing extends Event
+	{
+		@Label("Task Type")
+		Class<?> taskType;
+
+		@Label("Transaction Types")
+		String transactionTypes;
+
+		@Label("Directives")
+		int directiveCount;
+	}
+
+	/**
+	 * A session was rolled back by its task, or terminated by a collision.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@Name("org.hawkinssoftware.azia.SessionRollback")
+	@Label("Session Rollback")
+	@Category({ "Azia", "Transaction" })
+	static class Rollback extends Event
+	{
+		@Label("Task Type")
+		Class<?> taskType;
+
+		@Label("Transaction Types")
+		String transactionTypes;
+
+		@Label("Directives")
+		int directiveCount;
+
+		@Label("Cause")
+		@Description("ROLLED_BACK, or the CollisionStatus which terminated the session")
+		String cause;
+	}
+
+	private SessionEvents()
+	{
+	}
+}
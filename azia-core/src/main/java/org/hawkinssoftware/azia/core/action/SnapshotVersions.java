@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.action;
+
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Retains the committed values of the tracked <code>UserInterfaceTransactionQuery.Property</code>s of each actor, one
+ * version per commit, for the <code>UserInterfaceTransactionQuery.Snapshot</code>s. A commit records the values of the
+ * properties affected by its directives, as declared by the <code>UserInterfaceActorPreview</code>s of their actors:
+ * the prior value before the directives are applied, and the new value after, while the session holds its commit
+ * locks.
+ * 
+ * Commits take no global lock. Each takes the next version number when it publishes, and a snapshot opens at the
+ * highest version below which every commit has published, so it never sees part of a commit. The versions of a
+ * property are recorded under the monitor of its own chain, which only commits of the same actor contend for, and
+ * these are already serialized by the actor's commit lock.
+ * 
+ * The versions of a property are discarded as soon as no open or future snapshot can read them, and a property retains
+ * at most <code>RETENTION</code> versions regardless. A chain which is back to a single version, equal to the live
+ * value, is discarded altogether, and a chain is only weakly keyed by its actor.
+ * 
+ * @author Byron Hawkins
+ */
+@DomainRole.Join(membership = TransactionFacilitation.class)
+final class SnapshotVersions
+{
+	/**
+	 * Maximum number of versions retained for any one property of an actor (system property
+	 * <code>snapshot-retention</code>). A snapshot which falls behind the retained versions expires.
+	 */
+	private static final int RETENTION = Math.max(1, Integer.getInteger("snapshot-retention", 64));
+
+	/**
+	 * Identifies the values of one property of one actor, holding the actor weakly.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Key extends WeakReference<UserInterfaceActor>
+	{
+		final UserInterfaceTransactionQuery.Property<?, ?> property;
+		private final int hash;
+
+		Key(UserInterfaceActor actor, UserInterfaceTransactionQuery.Property<?, ?> property, ReferenceQueue<UserInterfaceActor> queue)
+		{
+			super(actor, queue);
+			this.property = property;
+			hash = (31 * System.identityHashCode(actor)) + System.identityHashCode(property);
+		}
+
+		@SuppressWarnings("unchecked")
+		Object read()
+		{
+			UserInterfaceActor actor = get();
+			return (actor == null) ? null : ((UserInterfaceTransactionQuery.Property<Object, Object>) property).getCurrentValue(actor);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (o == this)
+			{
+				return true;
+			}
+			if (!(o instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) o;
+			UserInterfaceActor actor = get();
+			return (actor != null) && (actor == other.get()) && (property == other.property);
+		}
+	}
+
+	/**
+	 * The value of a property as of a commit version.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Version
+	{
+		final long version;
+		final Object value;
+
+		Version(long version, Object value)
+		{
+			this.version = version;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The retained versions of one property, in ascending order, replaced as a whole under the monitor of the chain.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Chain
+	{
+		volatile Version[] versions;
+
+		// synchronized under `this: a commit of the actor has recorded its prior value but not yet published
+		boolean inFlight = false;
+		// synchronized under `this: removed from the chains, so a commit must record its versions in a new one
+		boolean retired = false;
+
+		Chain(Version prior)
+		{
+			versions = new Version[] { prior };
+		}
+
+		void append(Version latest)
+		{
+			Version[] current = versions;
+			int first = Math.max(0, current.length + 1 - RETENTION);
+			Version[] appended = Arrays.copyOfRange(current, first, current.length + 1);
+			appended[appended.length - 1] = latest;
+			versions = appended;
+		}
+
+		/**
+		 * Discard every version older than the newest version visible at <code>floor</code>.
+		 */
+		void prune(long floor)
+		{
+			Version[] current = versions;
+			for (int i = current.length - 1; i > 0; i--)
+			{
+				if (current[i].version <= floor)
+				{
+					versions = Arrays.copyOfRange(current, i, current.length);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * @return true if no snapshot can read a value other than the live one
+		 */
+		boolean isRedundant(long floor)
+		{
+			Version[] current = versions;
+			return !inFlight && (current.length == 1) && (current[0].version <= floor);
+		}
+
+		Object read(long version)
+		{
+			Version[] current = versions;
+			for (int i = current.length - 1; i >= 0; i--)
+			{
+				if (current[i].version <= version)
+				{
+					return current[i].value;
+				}
+			}
+			throw new UserInterfaceTransactionQuery.SnapshotExpiredException(version, current[0].version);
+		}
+	}
+
+	/**
+	 * The properties affected by the directives of one commit, whose new values are published by the commit.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	static class Commit
+	{
+		private final List<Key> keys;
+		private final List<Chain> chains;
+
+		Commit(List<Key> keys, List<Chain> chains)
+		{
+			this.keys = keys;
+			this.chains = chains;
+		}
+
+		/**
+		 * Record the values of the affected properties as the next version. Must be called after the directives are
+		 * applied, or have failed, while the session still holds its commit locks.
+		 */
+		void publish()
+		{
+			long version = nextVersion.incrementAndGet();
+			try
+			{
+				for (int i = 0; i < keys.size(); i++)
+				{
+					Chain chain = chains.get(i);
+					synchronized (chain)
+					{
+						chain.append(new Version(version, keys.get(i).read()));
+					}
+				}
+			}
+			finally
+			{
+				complete(version);
+
+				long floor = getRetentionFloor();
+				for (int i = 0; i < keys.size(); i++)
+				{
+					Chain chain = chains.get(i);
+					synchronized (chain)
+					{
+						chain.inFlight = false;
+						discardUnreachableVersions(keys.get(i), chain, floor);
+					}
+				}
+			}
+		}
+	}
+
+	private static final CopyOnWriteArrayList<UserInterfaceTransactionQuery.Property<?, ?>> trackedProperties = new CopyOnWriteArrayList<UserInterfaceTransactionQuery.Property<?, ?>>();
+	private static final ConcurrentMap<Key, Chain> chains = new ConcurrentHashMap<Key, Chain>();
+	private static final ReferenceQueue<UserInterfaceActor> DISPOSED_ACTORS = new ReferenceQueue<UserInterfaceActor>();
+
+	// the version taken by the latest commit to publish
+	private static final AtomicLong nextVersion = new AtomicLong();
+	// every version up to this one has been published, in full; advanced by whichever commit completes the sequence
+	private static final AtomicLong publishedVersion = new AtomicLong();
+	// versions published ahead of an earlier one which is still publishing
+	private static final Set<Long> publishedAhead = ConcurrentHashMap.newKeySet();
+
+	private static final Object snapshots = new Object();
+	// synchronized under `snapshots: the number of open snapshots at each version
+	private static final TreeMap<Long, Integer> openSnapshots = new TreeMap<Long, Integer>();
+	// written under `snapshots, read by any commit: the oldest open snapshot, MAX_VALUE if there is none, or
+	// MIN_VALUE while a snapshot is opening
+	private static volatile long snapshotFloor = Long.MAX_VALUE;
+
+	static void track(UserInterfaceTransactionQuery.Property<?, ?> property)
+	{
+		trackedProperties.addIfAbsent(property);
+	}
+
+	static boolean isTracking()
+	{
+		return !trackedProperties.isEmpty();
+	}
+
+	private static void complete(long version)
+	{
+		publishedAhead.add(version);
+		long published;
+		while (publishedAhead.contains((published = publishedVersion.get()) + 1L))
+		{
+			if (publishedVersion.compareAndSet(published, published + 1L))
+			{
+				publishedAhead.remove(published + 1L);
+			}
+		}
+	}
+
+	/**
+	 * @return the version at or after which every open snapshot reads, and every snapshot opened hereafter will read
+	 */
+	private static long getRetentionFloor()
+	{
+		// read in this order against openSnapshot(): either the floor shows the opening snapshot, or the snapshot opens
+		// at a version no older than the published version read here
+		long published = publishedVersion.get();
+		return Math.min(published, snapshotFloor);
+	}
+
+	// the caller holds the monitor of `chain
+	private static void discardUnreachableVersions(Key key, Chain chain, long floor)
+	{
+		chain.prune(floor);
+		if (chain.isRedundant(floor))
+		{
+			chain.retired = true;
+			chains.remove(key, chain);
+		}
+	}
+
+	static long openSnapshot()
+	{
+		synchronized (snapshots)
+		{
+			// retain every version until the snapshot is registered
+			snapshotFloor = Long.MIN_VALUE;
+			long version = publishedVersion.get();
+			Integer count = openSnapshots.get(version);
+			openSnapshots.put(version, (count == null) ? 1 : (count + 1));
+			snapshotFloor = openSnapshots.firstKey();
+			return version;
+		}
+	}
+
+	static void closeSnapshot(long version)
+	{
+		boolean floorAdvanced;
+		synchronized (snapshots)
+		{
+			Integer count = openSnapshots.get(version);
+			if (count == null)
+			{
+				throw new IllegalStateException("Attempt to close snapshot version " + version + " which is not open.");
+			}
+			if (count == 1)
+			{
+				openSnapshots.remove(version);
+			}
+			else
+			{
+				openSnapshots.put(version, count - 1);
+			}
+			floorAdvanced = (count == 1) && (version == snapshotFloor);
+			snapshotFloor = openSnapshots.isEmpty() ? Long.MAX_VALUE : openSnapshots.firstKey();
+		}
+
+		if (floorAdvanced)
+		{
+			// chains which are not committed again would otherwise keep the versions retained for this snapshot
+			long floor = getRetentionFloor();
+			for (Map.Entry<Key, Chain> entry : chains.entrySet())
+			{
+				Chain chain = entry.getValue();
+				synchronized (chain)
+				{
+					if (!chain.retired)
+					{
+						discardUnreachableVersions(entry.getKey(), chain, floor);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record the prior value of each tracked property affected by <code>directives</code>, if it has no retained
+	 * version. Must be called before the directives are applied, while the session holds its commit locks.
+	 * 
+	 * @return the commit to publish once the directives are applied, or null if no tracked property is affected
+	 */
+	static Commit prepare(List<UserInterfaceDirective> directives)
+	{
+		expungeDisposedActors();
+
+		Set<Key> keys = new LinkedHashSet<Key>();
+		for (UserInterfaceDirective directive : directives)
+		{
+			UserInterfaceActor actor = directive.getActor();
+			for (UserInterfaceActorPreview preview : actor.getPreviews(directive))
+			{
+				for (UserInterfaceTransactionQuery.Property<?, ?> property : trackedProperties)
+				{
+					if (preview.affects(property))
+					{
+						keys.add(new Key(actor, property, DISPOSED_ACTORS));
+					}
+				}
+			}
+		}
+		if (keys.isEmpty())
+		{
+			return null;
+		}
+
+		List<Key> committedKeys = new ArrayList<Key>(keys.size());
+		List<Chain> committedChains = new ArrayList<Chain>(keys.size());
+		for (Key key : keys)
+		{
+			while (true)
+			{
+				Chain chain = chains.get(key);
+				if (chain == null)
+				{
+					// no commit of this actor is in flight, so the live value is the latest committed one
+					Chain created = new Chain(new Version(0L, key.read()));
+					created.inFlight = true;
+					chain = chains.putIfAbsent(key, created);
+					if (chain == null)
+					{
+						committedKeys.add(key);
+						committedChains.add(created);
+						break;
+					}
+				}
+				synchronized (chain)
+				{
+					if (!chain.retired)
+					{
+						chain.inFlight = true;
+						committedKeys.add(key);
+						committedChains.add(chain);
+						break;
+					}
+				}
+			}
+		}
+		// a reader which finds no versions of a property may read the actor, so they must exist before it changes
+		VarHandle.fullFence();
+		return new Commit(committedKeys, committedChains);
+	}
+
+	private static void expungeDisposedActors()
+	{
+		Reference<? extends UserInterfaceActor> disposed;
+		while ((disposed = DISPOSED_ACTORS.poll()) != null)
+		{
+			chains.remove(disposed);
+		}
+	}
+
+	/**
+	 * @return the value of <code>property</code> of <code>actor</code> as of the commit <code>version</code>
+	 */
+	static Object read(UserInterfaceActor actor, UserInterfaceTransactionQuery.Property<?, ?> property, long version)
+	{
+		Key key = new Key(actor, property, null);
+		Chain chain = chains.get(key);
+		if (chain == null)
+		{
+			// not changed by a commit since the snapshot opened, unless a commit has recorded its first version meanwhile
+			Object value = key.read();
+			VarHandle.acquireFence();
+			chain = chains.get(key);
+			if (chain == null)
+			{
+				return value;
+			}
+		}
+		return chain.read(version);
+	}
+
+	private SnapshotVersions()
+	{
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.action;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Resolves each <code>UserInterfaceTransaction</code> class to its <code>TransactionFactory</code>, once. The default
+ * factory of a class whose no-arg constructor is accessible here is spun by the <code>LambdaMetafactory</code>, so
+ * that it calls the constructor directly; any other constructor is invoked through a <code>MethodHandle</code>. So is
+ * the constructor of a class loaded by a loader other than the one of this class or its ancestors: the spun factory
+ * is defined alongside this class, where such a class cannot be resolved.
+ * 
+ * Default factories are cached in a <code>ClassValue</code>, so that caching them does not pin the class loader of a
+ * transaction class; only the factories registered by the client are held in a map.
+ * 
+ * @author Byron Hawkins
+ */
+@DomainRole.Join(membership = TransactionFacilitation.class)
+final class TransactionFactories
+{
+	/**
+	 * Default factory of a transaction class whose constructor is not accessible to a generated factory.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class HandleFactory implements TransactionFactory<UserInterfaceTransaction>
+	{
+		private final MethodHandle constructor;
+
+		HandleFactory(MethodHandle constructor)
+		{
+			this.constructor = constructor.asType(MethodType.methodType(UserInterfaceTransaction.class));
+		}
+
+		@Override
+		public UserInterfaceTransaction createTransaction()
+		{
+			try
+			{
+				return (UserInterfaceTransaction) constructor.invokeExact();
+			}
+			catch (RuntimeException e)
+			{
+				throw e;
+			}
+			catch (Error e)
+			{
+				throw e;
+			}
+			catch (Throwable t)
+			{
+				throw new RuntimeException(t);
+			}
+		}
+	}
+
+	private static final MethodType FACTORY_TYPE = MethodType.methodType(TransactionFactory.class);
+	private static final MethodType CREATE_TYPE = MethodType.methodType(UserInterfaceTransaction.class);
+	private static final MethodType NO_ARG_CONSTRUCTOR = MethodType.methodType(void.class);
+
+	private static final ClassValue<TransactionFactory<?>> DEFAULT_FACTORIES = new ClassValue<TransactionFactory<?>>() {
+		@Override
+		protected TransactionFactory<?> computeValue(Class<?> transactionType)
+		{
+			return createDefaultFactory(transactionType.asSubclass(UserInterfaceTransaction.class));
+		}
+	};
+
+	private static final ConcurrentMap<Class<?>, TransactionFactory<?>> REGISTERED_FACTORIES = new ConcurrentHashMap<Class<?>, TransactionFactory<?>>();
+
+	static <TransactionType extends UserInterfaceTransaction> void register(Class<TransactionType> transactionType,
+			TransactionFactory<? extends TransactionType> factory)
+	{
+		REGISTERED_FACTORIES.put(transactionType, factory);
+	}
+
+	static TransactionFactory<?> get(Class<? extends UserInterfaceTransaction> transactionType)
+	{
+		if (!REGISTERED_FACTORIES.isEmpty())
+		{
+			TransactionFactory<?> factory = REGISTERED_FACTORIES.get(transactionType);
+			if (factory != null)
+			{
+				return factory;
+			}
+		}
+		return DEFAULT_FACTORIES.get(transactionType);
+	}
+
+	private static TransactionFactory<?> createDefaultFactory(Class<? extends UserInterfaceTransaction> transactionType)
+	{
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle constructor;
+		try
+		{
+			constructor = lookup.findConstructor(transactionType, NO_ARG_CONSTRUCTOR);
+		}
+		catch (NoSuchMethodException e)
+		{
+			throw new IllegalArgumentException("Transaction " + transactionType.getName()
+					+ " has no default, no-arg constructor. Please register a TransactionFactory for it.", e);
+		}
+		catch (IllegalAccessException e)
+		{
+			return createHandleFactory(lookup, transactionType);
+		}
+
+		if (!isVisible(transactionType))
+		{
+			return new HandleFactory(constructor);
+		}
+
+		try
+		{
+			CallSite site = LambdaMetafactory.metafactory(lookup, "createTransaction", FACTORY_TYPE, CREATE_TYPE, constructor,
+					MethodType.methodType(transactionType));
+			return (TransactionFactory<?>) site.getTarget().invoke();
+		}
+		catch (Throwable t)
+		{
+			throw new IllegalStateException("Failed to generate a factory for transaction " + transactionType.getName()
+					+ ". Please register a TransactionFactory for it.", t);
+		}
+	}
+
+	/**
+	 * @return whether <code>transactionType</code> was loaded by the loader of this class or one of its ancestors
+	 */
+	private static boolean isVisible(Class<?> transactionType)
+	{
+		ClassLoader transactionLoader = transactionType.getClassLoader();
+		if (transactionLoader == null)
+		{
+			// the bootstrap loader is the ancestor of every loader
+			return true;
+		}
+		for (ClassLoader loader = TransactionFactories.class.getClassLoader(); loader != null; loader = loader.getParent())
+		{
+			if (loader == transactionLoader)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static TransactionFactory<?> createHandleFactory(MethodHandles.Lookup lookup, Class<? extends UserInterfaceTransaction> transactionType)
+	{
+		try
+		{
+			Constructor<? extends UserInterfaceTransaction> constructor = transactionType.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return new HandleFactory(lookup.unreflectConstructor(constructor));
+		}
+		catch (Exception e)
+		{
+			throw new IllegalArgumentException("Failed to access the no-arg constructor of transaction " + transactionType.getName()
+					+ ". Please register a TransactionFactory for it.", e);
+		}
+	}
+
+	private TransactionFactories()
+	{
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.action;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionElement;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Creates the instances of a <code>UserInterfaceTransaction</code> class as sessions join it. By default each class
+ * is given a factory which calls its no-arg constructor directly; a client may register its own factory with the
+ * <code>TransactionRegistryCoordinator</code>, e.g. for a transaction which requires constructor arguments.
+ * 
+ * @author Byron Hawkins
+ */
+@DomainRole.Join(membership = TransactionElement.class)
+public interface TransactionFactory<TransactionType extends UserInterfaceTransaction>
+{
+	TransactionType createTransaction();
+}
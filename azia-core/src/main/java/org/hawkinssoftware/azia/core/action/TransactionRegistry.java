@@ -10,20 +10,30 @@
  */
 package org.hawkinssoftware.azia.core.action;
 
-import java.util.ArrayList;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.hawkinssoftware.azia.core.action.UserInterfaceTransaction.ActorBasedContributor;
 import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionElement;
 import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
+import org.hawkinssoftware.azia.core.lock.LockRegistry;
 import org.hawkinssoftware.rns.core.aop.InitializationAspect;
 import org.hawkinssoftware.rns.core.publication.InvocationConstraint;
 import org.hawkinssoftware.rns.core.role.CoreDomains.InitializationDomain;
 import org.hawkinssoftware.rns.core.role.DomainRole;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-
 /**
  * Public entry point for executing <code>UserInterfaceTask</code>s. At present the TransactionRegistry should not be
  * used for anything else.
@@ -64,19 +74,241 @@ public class TransactionRegistry
 		}
 	}
 
+	// lazily started on the first delayed retry of a submitted task, or the first group commit timer
+	/**
+	 * Holds the daemon thread which hands the delayed retries of submitted tasks back to their executors, so that no
+	 * executor thread is blocked for the duration of a backoff. The <code>GroupCommitQueue</code> also uses it to time
+	 * its batches.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	static class RetryScheduler
+	{
+		static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "Azia Retry Scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * One attempt at a task submitted to an <code>Executor</code>, which schedules the next attempt on collision.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@DomainRole.Join(membership = TransactionFacilitation.class)
+	private static class SubmittedTask implements Runnable
+	{
+		private final UserInterfaceTask task;
+		private final Executor executor;
+		private final CompletableFuture<Boolean> result;
+
+		private final Runnable resubmission = new Runnable() {
+			@Override
+			public void run()
+			{
+				schedule();
+			}
+		};
+
+		private final long firstAttempt = System.nanoTime();
+		private int retryCount = 0;
+
+		SubmittedTask(UserInterfaceTask task, Executor executor, CompletableFuture<Boolean> result)
+		{
+			this.task = task;
+			this.executor = executor;
+			this.result = result;
+		}
+
+		void schedule()
+		{
+			try
+			{
+				executor.execute(this);
+			}
+			catch (RejectedExecutionException e)
+			{
+				result.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public void run()
+		{
+			UserInterfaceTransactionSession session = SESSIONS.get();
+			try
+			{
+				switch (session.attemptTask(task, retryCount, firstAttempt))
+				{
+					case COMMITTED:
+						result.complete(true);
+						break;
+					case ROLLED_BACK:
+						result.complete(false);
+						break;
+					case RETRY:
+						long delay = task.getRetryPolicy().getRetryDelay(retryCount);
+						retryCount++;
+						if (delay > 0L)
+						{
+							RetryScheduler.INSTANCE.schedule(resubmission, delay, TimeUnit.NANOSECONDS);
+						}
+						else
+						{
+							schedule();
+						}
+						break;
+				}
+			}
+			catch (Throwable t)
+			{
+				result.completeExceptionally(t);
+			}
+			finally
+			{
+				releaseIfVirtual(session);
+			}
+		}
+	}
+
 	private static final ThreadLocal<UserInterfaceTransactionSession> SESSIONS = new ThreadLocal<UserInterfaceTransactionSession>() {
 		@Override
 		protected UserInterfaceTransactionSession initialValue()
 		{
-			return new UserInterfaceTransactionSession();
+			UserInterfaceTransactionSession session = new UserInterfaceTransactionSession();
+			session.onVirtualThread = isVirtual(Thread.currentThread());
+			return session;
 		}
 	};
 
+	// Thread.isVirtual() is only available from Java 21; resolved once, and only called as each thread's session is
+	// created
+	private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+	private static MethodHandle findIsVirtual()
+	{
+		try
+		{
+			return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+		}
+		catch (NoSuchMethodException e)
+		{
+			return null;
+		}
+		catch (IllegalAccessException e)
+		{
+			return null;
+		}
+	}
+
+	private static boolean isVirtual(Thread thread)
+	{
+		if (IS_VIRTUAL == null)
+		{
+			return false;
+		}
+		try
+		{
+			return (boolean) IS_VIRTUAL.invokeExact(thread);
+		}
+		catch (Throwable t)
+		{
+			throw new IllegalStateException("Failed to determine whether thread " + thread.getName() + " is virtual.", t);
+		}
+	}
+
+	/**
+	 * Execute <code>task</code> in the transaction session of the current thread, retrying it on collision until it
+	 * completes. A virtual thread ordinarily executes a single task, so on completion of its outermost task its
+	 * transaction state is released immediately instead of being retained for the life of the thread.
+	 */
 	public static void executeTask(UserInterfaceTask task) throws UserInterfaceTask.ConcurrentAccessException
 	{
 		// System.out.println("Execute " + task.getClass().getSimpleName());
 
-		SESSIONS.get().executeTask(task);
+		UserInterfaceTransactionSession session = SESSIONS.get();
+		try
+		{
+			session.executeTask(task);
+		}
+		finally
+		{
+			releaseIfVirtual(session);
+		}
+	}
+
+	/**
+	 * Execute <code>task</code> as an outermost task on a thread of <code>executor</code>, without blocking the caller.
+	 * When the task collides with another, its next attempt is submitted to <code>executor</code> again, so the thread
+	 * is free for other tasks in the meantime.
+	 * 
+	 * @return a future completed with <code>true</code> if the task committed, or <code>false</code> if it rolled
+	 *         back; or completed exceptionally with a <code>ConcurrentAccessException</code> if it exhausts its
+	 *         retries, or with any exception thrown by the task or by <code>executor</code>
+	 */
+	public static CompletableFuture<Boolean> submit(UserInterfaceTask task, Executor executor)
+	{
+		CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+		new SubmittedTask(task, executor, result).schedule();
+		return result;
+	}
+
+	/**
+	 * Execute <code>task</code> as an outermost task on the current thread, as <code>executeTask()</code> does.
+	 * 
+	 * @return whether the task committed
+	 */
+	static boolean executeOutermostTask(UserInterfaceTask task) throws UserInterfaceTask.ConcurrentAccessException
+	{
+		UserInterfaceTransactionSession session = SESSIONS.get();
+		try
+		{
+			return session.executeOutermostTask(task);
+		}
+		finally
+		{
+			releaseIfVirtual(session);
+		}
+	}
+
+	private static void releaseIfVirtual(UserInterfaceTransactionSession session)
+	{
+		if (session.onVirtualThread && session.isIdle())
+		{
+			releaseCurrentThread();
+		}
+	}
+
+	/**
+	 * Retire the transaction state of the current thread, for a thread which will execute no further tasks. State is
+	 * otherwise retained for the life of the thread, which suits a long-lived worker but leaks from a pool of
+	 * short-lived threads until each thread terminates. The next task executed on this thread starts afresh.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the current thread is executing a task
+	 */
+	public static void releaseCurrentThread()
+	{
+		UserInterfaceTransactionSession session = SESSIONS.get();
+		if (!session.isIdle())
+		{
+			throw new IllegalStateException("Attempt to release the current thread while it is executing a task.");
+		}
+		SESSIONS.remove();
+		LockRegistry.getInstance().releaseCurrentThread();
+	}
+
+	/**
+	 * Gauge of the live threads currently retaining transaction lock state.
+	 */
+	public static int getLiveContextCount()
+	{
+		return LockRegistry.getInstance().getLiveContextCount();
 	}
 
 	@InvocationConstraint(domains = TransactionFacilitation.class)
@@ -90,36 +322,56 @@ public class TransactionRegistry
 		return SESSIONS.get().getActionsOn(actor);
 	}
 
-	private static TransactionRegistry INSTANCE;
+	private static final TransactionRegistry INSTANCE = new TransactionRegistry();
 
 	public static TransactionRegistry getInstance()
 	{
-		synchronized (TransactionRegistry.class)
-		{
-			if (INSTANCE == null)
-			{
-				INSTANCE = new TransactionRegistry();
-			}
-			return INSTANCE;
-		}
+		return INSTANCE;
 	}
 
-	private final Multimap<UserInterfaceActor, ActorBasedContributor> actorBasedContributors = HashMultimap.create();
+	private static final ActorBasedContributor[] NO_CONTRIBUTORS = new ActorBasedContributor[0];
 
-	List<ActorBasedContributor> getActorBasedContributors(UserInterfaceActor actor)
+	// immutable arrays, replaced under the monitor of the map on each mutation and read without lock by every broadcast
+	private final ConcurrentMap<UserInterfaceActor, ActorBasedContributor[]> actorBasedContributors = new ConcurrentHashMap<UserInterfaceActor, ActorBasedContributor[]>();
+
+	/**
+	 * @return the current snapshot, which must not be modified
+	 */
+	ActorBasedContributor[] getActorBasedContributors(UserInterfaceActor actor)
 	{
-		synchronized (actorBasedContributors)
+		ActorBasedContributor[] contributors = actorBasedContributors.get(actor);
+		return (contributors == null) ? NO_CONTRIBUTORS : contributors;
+	}
+
+	/**
+	 * Gauge of the contributors currently registered, counting each actor of a contributor separately.
+	 */
+	public int getActorBasedContributorCount()
+	{
+		int count = 0;
+		for (ActorBasedContributor[] contributors : actorBasedContributors.values())
 		{
-			// TODO: not so efficient here...
-			return new ArrayList<ActorBasedContributor>(actorBasedContributors.get(actor));
+			count += contributors.length;
 		}
+		return count;
 	}
 
 	public void addActorBasedContributor(UserInterfaceActor actor, ActorBasedContributor contributor)
 	{
 		synchronized (actorBasedContributors)
 		{
-			actorBasedContributors.put(actor, contributor);
+			ActorBasedContributor[] contributors = getActorBasedContributors(actor);
+			for (ActorBasedContributor existing : contributors)
+			{
+				if (existing.equals(contributor))
+				{
+					return;
+				}
+			}
+
+			ActorBasedContributor[] expanded = Arrays.copyOf(contributors, contributors.length + 1);
+			expanded[contributors.length] = contributor;
+			actorBasedContributors.put(actor, expanded);
 		}
 	}
 
@@ -127,7 +379,7 @@ public class TransactionRegistry
 	{
 		synchronized (actorBasedContributors)
 		{
-			actorBasedContributors.removeAll(actor);
+			actorBasedContributors.remove(actor);
 		}
 	}
 
@@ -135,7 +387,24 @@ public class TransactionRegistry
 	{
 		synchronized (actorBasedContributors)
 		{
-			actorBasedContributors.remove(actor, contributor);
+			ActorBasedContributor[] contributors = getActorBasedContributors(actor);
+			for (int i = 0; i < contributors.length; i++)
+			{
+				if (contributors[i].equals(contributor))
+				{
+					if (contributors.length == 1)
+					{
+						actorBasedContributors.remove(actor);
+					}
+					else
+					{
+						ActorBasedContributor[] reduced = Arrays.copyOf(contributors, contributors.length - 1);
+						System.arraycopy(contributors, i + 1, reduced, i, contributors.length - i - 1);
+						actorBasedContributors.put(actor, reduced);
+					}
+					return;
+				}
+			}
 		}
 	}
 }
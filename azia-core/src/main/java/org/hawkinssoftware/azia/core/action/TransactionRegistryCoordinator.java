@@ -10,8 +10,7 @@
  */
 package org.hawkinssoftware.azia.core.action;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.hawkinssoftware.azia.core.action.TransactionRegistry.Listener;
  
@@ -29,56 +28,72 @@ public class TransactionRegistryCoordinator
 	
 	private static final TransactionRegistryCoordinator INSTANCE = new TransactionRegistryCoordinator();
 	
-	private final List<Listener> listeners = new ArrayList<Listener>();
-	private final List<UserInterfaceTransaction.PostProcessor> postProcessors = new ArrayList<UserInterfaceTransaction.PostProcessor>();
+	// immutable snapshots, replaced under the coordinator's monitor on each mutation and iterated without lock
+	private volatile Listener[] listeners = new Listener[0];
+	private volatile UserInterfaceTransaction.PostProcessor[] postProcessors = new UserInterfaceTransaction.PostProcessor[0];
 
-	public void addListener(Listener listener)
+	public synchronized void addListener(Listener listener)
 	{
-		synchronized (listeners)
-		{
-			listeners.add(listener);
-		}
+		Listener[] expanded = Arrays.copyOf(listeners, listeners.length + 1);
+		expanded[listeners.length] = listener;
+		listeners = expanded;
 	}
 
-	public void removeListener(Listener listener)
+	public synchronized void removeListener(Listener listener)
 	{
-		synchronized (listeners)
-		{
-			listeners.remove(listener);
-		}
+		listeners = remove(listeners, listener);
 	}
 
-	// WIP: lousy list copy
-	List<Listener> getListeners()
+	/**
+	 * @return the current snapshot, which must not be modified
+	 */
+	Listener[] getListeners()
 	{
-		synchronized (listeners)
-		{
-			return new ArrayList<Listener>(listeners);
-		}
+		return listeners;
 	}
 
-	// WIP: lousy list copy
-	List<UserInterfaceTransaction.PostProcessor> getPostProcessors()
+	/**
+	 * @return the current snapshot, which must not be modified
+	 */
+	UserInterfaceTransaction.PostProcessor[] getPostProcessors()
 	{
-		synchronized (postProcessors)
-		{
-			return new ArrayList<UserInterfaceTransaction.PostProcessor>(postProcessors);
-		}
+		return postProcessors;
 	}
 
-	public void addPostProcessor(UserInterfaceTransaction.PostProcessor postProcessor)
+	public synchronized void addPostProcessor(UserInterfaceTransaction.PostProcessor postProcessor)
 	{
-		synchronized (postProcessors)
-		{
-			postProcessors.add(postProcessor);
-		}
+		UserInterfaceTransaction.PostProcessor[] expanded = Arrays.copyOf(postProcessors, postProcessors.length + 1);
+		expanded[postProcessors.length] = postProcessor;
+		postProcessors = expanded;
+	}
+
+	public synchronized void removePostProcessor(UserInterfaceTransaction.PostProcessor postProcessor)
+	{
+		postProcessors = remove(postProcessors, postProcessor);
+	}
+
+	/**
+	 * Create the instances of <code>transactionType</code> with <code>factory</code>, instead of the default factory
+	 * which calls its no-arg constructor.
+	 */
+	public <TransactionType extends UserInterfaceTransaction> void setTransactionFactory(Class<TransactionType> transactionType,
+			TransactionFactory<? extends TransactionType> factory)
+	{
+		TransactionFactories.register(transactionType, factory);
 	}
 
-	public void removePostProcessor(UserInterfaceTransaction.PostProcessor postProcessor)
+	// removes the first occurrence, like List.remove(Object)
+	private static <T> T[] remove(T[] elements, T element)
 	{
-		synchronized (postProcessors)
+		for (int i = 0; i < elements.length; i++)
 		{
-			postProcessors.remove(postProcessor);
+			if (element.equals(elements[i]))
+			{
+				T[] reduced = Arrays.copyOf(elements, elements.length - 1);
+				System.arraycopy(elements, i + 1, reduced, i, elements.length - i - 1);
+				return reduced;
+			}
 		}
+		return elements;
 	}
 }
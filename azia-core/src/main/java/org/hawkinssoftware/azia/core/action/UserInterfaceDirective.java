@@ -60,6 +60,34 @@ public abstract class UserInterfaceDirective implements UserInterfaceActorDelega
 		}
 	}
 
+	/**
+	 * A <code>UserInterfaceDirective</code> implements this interface to allow a transaction which coalesces its
+	 * directives, such as the <code>GenericTransaction</code>, to merge it with a later directive on the same actor
+	 * having an equal merge key. Only the net effect of the merged directives is then committed and broadcast, so for
+	 * example a drag which moves an actor 200 times within one session commits a single move.
+	 * 
+	 * A merge never reorders the directives on an actor: a directive is only merged with the last directive on its
+	 * actor, so any other directive on the same actor posted in between, coalescing with another merge key or not,
+	 * ends the run and the later directive is committed after it, unmerged.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	public interface Coalescing
+	{
+		/**
+		 * @return a non-null identifier of the property of the actor which this directive modifies, having a meaningful
+		 *         <code>equals()</code>
+		 */
+		Object getMergeKey();
+
+		/**
+		 * @return a directive on the same actor having the net effect of this directive followed by
+		 *         <code>successor</code>, or null if they cannot be merged; the transaction may discard it, so the
+		 *         merge must have no side effects
+		 */
+		UserInterfaceDirective merge(UserInterfaceDirective successor);
+	}
+
 	public final String id;
 
 	private final UserInterfaceActor actor;
@@ -10,9 +10,16 @@
  */
 package org.hawkinssoftware.azia.core.action;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionElement;
 import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionParticipant;
+import org.hawkinssoftware.azia.core.log.AziaLogging.Tag;
 import org.hawkinssoftware.azia.core.role.CollaborationObserver;
+import org.hawkinssoftware.rns.core.log.Log;
 import org.hawkinssoftware.rns.core.publication.InvocationConstraint;
 import org.hawkinssoftware.rns.core.role.DomainRole;
 
@@ -52,7 +59,11 @@ public abstract class UserInterfaceTask
 		/**
 		 * Lock acquisition timeout.
 		 */
-		TIMEOUT;
+		TIMEOUT,
+		/**
+		 * An optimistic read was invalidated by the commit of another session.
+		 */
+		STALE_READ;
 	}
 
 	/**
@@ -87,6 +98,9 @@ public abstract class UserInterfaceTask
 	final Type type;
 	private UserInterfaceTransactionSession session;
 	private int maximumRetryCount = 10;
+	private RetryPolicy retryPolicy = RetryPolicy.getDefault();
+	private List<UserInterfaceActor> declaredActors = Collections.emptyList();
+	private long lockWaitLimit = 0L;
 
 	protected UserInterfaceTask()
 	{
@@ -119,11 +133,67 @@ public abstract class UserInterfaceTask
 		return maximumRetryCount;
 	}
 
+	protected void setRetryPolicy(RetryPolicy retryPolicy)
+	{
+		this.retryPolicy = retryPolicy;
+	}
+
+	public RetryPolicy getRetryPolicy()
+	{
+		return retryPolicy;
+	}
+
+	/**
+	 * Limit the time this task may wait for any one lock before it fails with <code>CollisionStatus.TIMEOUT</code>. By
+	 * default the limit adapts to the typical hold time of each lock, which suits most tasks; a task which must respond
+	 * promptly may prefer to fail and retry sooner.
+	 */
+	protected void setLockWaitLimit(long lockWaitLimit, TimeUnit unit)
+	{
+		this.lockWaitLimit = unit.toNanos(lockWaitLimit);
+	}
+
+	/**
+	 * @return the lock wait limit in nanoseconds, or 0 if the limit is adaptive
+	 */
+	public long getLockWaitLimit()
+	{
+		return lockWaitLimit;
+	}
+
+	/**
+	 * Declare every actor this task will lock, so that the engine acquires their locks in a global order before
+	 * <code>execute()</code>. A task whose declaration is complete is never chosen as the victim of a crosslock, from
+	 * the acquisition of its declared locks through its commit, so it is never retried for a
+	 * <code>CollisionStatus.CROSSLOCK</code>; it may still be failed by a lock wait timeout or a stale read. The first
+	 * actor locked which was not declared is locked lazily as usual, and from then on the task is exposed to the usual
+	 * risk of collision.
+	 */
+	protected void declareActors(UserInterfaceActor... actors)
+	{
+		declaredActors = Collections.unmodifiableList(Arrays.asList(actors.clone()));
+	}
+
+	public List<UserInterfaceActor> getDeclaredActors()
+	{
+		return declaredActors;
+	}
+
+	boolean allowRetry(int retryCount, long elapsed)
+	{
+		return (retryCount < maximumRetryCount) && retryPolicy.allowRetry(retryCount, elapsed);
+	}
+
 	void setSession(UserInterfaceTransactionSession session)
 	{
 		this.session = session;
 	}
 
+	UserInterfaceTransactionSession getSession()
+	{
+		return session;
+	}
+
 	@SuppressWarnings("unchecked")
 	protected final <TransactionType extends UserInterfaceTransaction> TransactionType getTransaction(Class<TransactionType> transactionType)
 	{
@@ -133,7 +203,7 @@ public abstract class UserInterfaceTask
 	@InvocationConstraint(packages = InvocationConstraint.MY_PACKAGE)
 	final void returnAndRetry(CollisionStatus status)
 	{
-		System.err.println("Failing task " + getClass().getSimpleName() + " on thread " + Thread.currentThread().getName() + " for " + status);
+		Log.out(Tag.LOCK_DEBUG, "Failing task %s on thread %s for %s", getClass().getSimpleName(), Thread.currentThread().getName(), status);
 		throw new RetryException();
 	}
 }
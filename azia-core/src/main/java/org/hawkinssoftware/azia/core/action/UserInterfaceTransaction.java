@@ -10,6 +10,10 @@
  */
 package org.hawkinssoftware.azia.core.action;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -214,6 +218,15 @@ public interface UserInterfaceTransaction
 
 		void postAction(UserInterfaceDirective action);
 
+		/**
+		 * Post <code>action</code> as the net effect of <code>replaced</code> and a later directive, withdrawing the
+		 * notification of <code>replaced</code>, provided that it has not yet been broadcast.
+		 * 
+		 * @return false, having posted nothing, if the notification of <code>replaced</code> has already been
+		 *         broadcast, so the contributors have seen it and responded
+		 */
+		boolean replaceAction(UserInterfaceDirective replaced, UserInterfaceDirective action);
+
 		// TODO: seems risky to leave these in the hands of the transaction--could forward them by default, and allow
 		// txn to override. But txn is supposed to be a highly responsible entity, so maybe it's ok in this case.
 		void postNotification(UserInterfaceNotification notification);
@@ -264,6 +277,63 @@ public interface UserInterfaceTransaction
 		void iterate();
 	}
 
+	/**
+	 * A <code>UserInterfaceTransaction</code> implements this interface to allow the transaction engine to reuse its
+	 * instances when transaction pooling is enabled (system property <code>pool-transactions</code>). At the end of
+	 * each session, after commit or rollback, the instance is reset and retained by the thread for the next session
+	 * which joins its type; so a resettable transaction must not be referenced by its clients beyond the session. The
+	 * opt-in is not inherited: only instances of a class which is itself annotated <code>@Resettable.Pooled</code> are
+	 * pooled, so a subclass which adds state is never reused by accident. A subclass opts in with the annotation, after
+	 * making sure that <code>reset()</code> also clears its own state.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	public interface Resettable extends UserInterfaceTransaction
+	{
+		/**
+		 * Marks a <code>Resettable</code> class whose <code>reset()</code> clears all of its state, so its instances
+		 * may be pooled. Deliberately not <code>@Inherited</code>.
+		 * 
+		 * @author Byron Hawkins
+		 */
+		@Retention(RetentionPolicy.RUNTIME)
+		@Target(ElementType.TYPE)
+		public @interface Pooled
+		{
+		}
+
+		/**
+		 * Return this transaction to the state of a new instance. <code>setSession()</code> is called again before
+		 * reuse.
+		 */
+		void reset();
+	}
+
+	/**
+	 * A <code>UserInterfaceTransaction</code> implements this interface to declare that its
+	 * <code>commitTransaction()</code> does nothing but commit its directives in order, so that the transaction engine
+	 * may instead commit them itself when parallel commit is enabled (system property <code>parallel-commit</code>). The
+	 * engine partitions the directives of a session by the lock of their actors, and commits the partitions
+	 * concurrently, each in order. The contract is not inherited by a subclass which overrides
+	 * <code>commitTransaction()</code>.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	public interface Partitionable extends UserInterfaceTransaction
+	{
+		/**
+		 * Add each directive which <code>commitTransaction()</code> would commit to <code>directives</code>, in commit
+		 * order.
+		 */
+		void addDirectivesInCommitOrder(List<UserInterfaceDirective> directives);
+
+		/**
+		 * Commit <code>directives</code> in order, which are a subsequence of those added by
+		 * <code>addDirectivesInCommitOrder()</code>. May be called concurrently for disjoint subsequences.
+		 */
+		void commitDirectives(List<UserInterfaceDirective> directives);
+	}
+
 	void setSession(Session session);
 
 	void transactionIntroduced(Class<? extends UserInterfaceTransaction> introducedTransactionType);
@@ -138,14 +138,41 @@ public class UserInterfaceTransactionQuery
 	public static final class Node<T>
 	{
 		final T value;
+		final Snapshot snapshot;
 
 		Node(T currentValue)
+		{
+			this(currentValue, null);
+		}
+
+		Node(T currentValue, Snapshot snapshot)
 		{
 			value = currentValue;
+			this.snapshot = snapshot;
 		}
 
+		/**
+		 * @return the value of <code>property</code>, as committed at the version of the snapshot if this query was
+		 *         started from one, or else its current value with any transactional changes visible in the current
+		 *         mode
+		 */
+		@SuppressWarnings("unchecked")
 		public <Child> Node<Child> getTransactionalValue(Property<? super T, Child> property)
 		{
+			if (snapshot != null)
+			{
+				Child snapshotValue;
+				if (value instanceof UserInterfaceActor)
+				{
+					snapshotValue = (Child) SnapshotVersions.read((UserInterfaceActor) value, property, snapshot.version);
+				}
+				else
+				{
+					snapshotValue = property.getCurrentValue(value);
+				}
+				return new Node<Child>(snapshotValue, snapshot);
+			}
+
 			Child currentChildValue = property.getCurrentValue(value);
 
 			if (isReadingTransactionalChanges())
@@ -229,11 +256,91 @@ public class UserInterfaceTransactionQuery
 		}
 	}
 
+	/**
+	 * A consistent view of the tracked properties of every actor as committed at one point in time. Reading through a
+	 * snapshot takes no lock, and never waits for a commit; commits record the versions without any global lock, so
+	 * snapshots do not serialize them. A commit which completes after the snapshot was opened is not visible in it, nor
+	 * is a commit which was still recording its versions. A property which is not tracked, or which belongs to an
+	 * entity other than an actor, is read from its current value. The versions read by a snapshot are retained until it
+	 * is closed, within the limit of the system property <code>snapshot-retention</code> (versions per property),
+	 * beyond which reads fail with a <code>SnapshotExpiredException</code>.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@DomainRole.Join(membership = TransactionElement.class)
+	public static final class Snapshot implements AutoCloseable
+	{
+		final long version;
+		private boolean closed = false;
+
+		Snapshot(long version)
+		{
+			this.version = version;
+		}
+
+		public long getVersion()
+		{
+			return version;
+		}
+
+		public <T> Node<T> start(T queryRoot)
+		{
+			if (closed)
+			{
+				throw new IllegalStateException("Attempt to query a closed snapshot.");
+			}
+			return new Node<T>(queryRoot, this);
+		}
+
+		@Override
+		public void close()
+		{
+			if (!closed)
+			{
+				closed = true;
+				SnapshotVersions.closeSnapshot(version);
+			}
+		}
+	}
+
+	/**
+	 * Thrown when a snapshot reads a property whose versions have been discarded, because more than the retained
+	 * number of versions were committed since the snapshot was opened.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	public static class SnapshotExpiredException extends IllegalStateException
+	{
+		public SnapshotExpiredException(long version, long oldestRetainedVersion)
+		{
+			super("The snapshot at version " + version + " has expired: the oldest retained version is " + oldestRetainedVersion);
+		}
+	}
+
 	public static <T> Node<T> start(T queryRoot)
 	{
 		return new Node<T>(queryRoot);
 	}
 
+	/**
+	 * Retain the committed versions of <code>property</code> for the snapshots. The property must be a property of the
+	 * actor itself, its changes must be declared by the <code>UserInterfaceActorPreview</code>s of the actor, and its
+	 * values must be immutable, since a snapshot shares them.
+	 */
+	public static void trackVersions(Property<? extends UserInterfaceActor, ?> property)
+	{
+		SnapshotVersions.track(property);
+	}
+
+	/**
+	 * Open a snapshot of the committed state of the tracked properties, which must be closed when the reader is done
+	 * with it.
+	 */
+	public static Snapshot openSnapshot()
+	{
+		return new Snapshot(SnapshotVersions.openSnapshot());
+	}
+
 	public static void setReadTransactionalChanges(boolean b)
 	{
 		QUERY_MODE.get().changeMode(b ? Mode.READ_TRANSACTIONAL_CHANGES : Mode.IGNORE_TRANSACTIONAL_CHANGES);
@@ -11,6 +11,7 @@
 package org.hawkinssoftware.azia.core.action;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -23,6 +24,10 @@ import org.hawkinssoftware.azia.core.action.UserInterfaceTransaction.ActorBasedC
 import org.hawkinssoftware.azia.core.action.UserInterfaceTransaction.ActorBasedContributor.PendingTransaction;
 import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
 import org.hawkinssoftware.azia.core.lock.LockRegistry;
+import org.hawkinssoftware.azia.core.log.AziaLogging.Tag;
+import org.hawkinssoftware.azia.core.metrics.ClassMetrics;
+import org.hawkinssoftware.azia.core.metrics.TransactionMetrics;
+import org.hawkinssoftware.rns.core.log.Log;
 import org.hawkinssoftware.rns.core.role.DomainRole;
 
 import com.google.common.collect.ArrayListMultimap;
@@ -86,6 +91,7 @@ class UserInterfaceTransactionSession
 		}
 
 		private final UserInterfaceTransaction transaction;
+		private final ClassMetrics metrics;
 
 		private final Set<Class<? extends UserInterfaceNotification>> requestedNotificationTypes = new HashSet<Class<? extends UserInterfaceNotification>>();
 		private final Set<Class<? extends UserInterfaceTransaction>> requestedNotificationSources = new HashSet<Class<? extends UserInterfaceTransaction>>();
@@ -94,17 +100,38 @@ class UserInterfaceTransactionSession
 		private final Set<UserInterfaceNotification> postedNotifications = new HashSet<UserInterfaceNotification>();
 
 		private List<PendingBroadcast> pendingBroadcast = new ArrayList<PendingBroadcast>();
+		private int directiveCount = 0;
 
 		TransactionSession(UserInterfaceTransaction transaction)
 		{
 			this.transaction = transaction;
+			metrics = TransactionMetrics.getInstance().forTransaction(transaction.getClass());
+		}
+
+		void activate()
+		{
 			transaction.setSession(this);
+			metrics.sessionStarted();
+		}
+
+		void reset()
+		{
+			requestedNotificationTypes.clear();
+			requestedNotificationSources.clear();
+			requestedNotificationTypesBySource.clear();
+			postedNotifications.clear();
+			pendingBroadcast.clear();
+			directiveCount = 0;
+			((UserInterfaceTransaction.Resettable) transaction).reset();
 		}
 
 		@Override
 		public void requestNotificationByType(Class<? extends UserInterfaceNotification> notificationType)
 		{
-			requestedNotificationTypes.add(notificationType);
+			if (requestedNotificationTypes.add(notificationType))
+			{
+				addRoute(routesByNotificationType, notificationType, this);
+			}
 
 			for (UserInterfaceNotification notification : notificationsByNotificationType.get(notificationType))
 			{
@@ -118,7 +145,10 @@ class UserInterfaceTransactionSession
 		@Override
 		public void requestNotificationByTransactionType(Class<? extends UserInterfaceTransaction> transactionType)
 		{
-			requestedNotificationSources.add(transactionType);
+			if (requestedNotificationSources.add(transactionType))
+			{
+				addRoute(routesBySource, transactionType, this);
+			}
 
 			for (UserInterfaceNotification notification : notificationsByTransactionType.get(transactionType))
 			{
@@ -133,7 +163,11 @@ class UserInterfaceTransactionSession
 		public void requestSpecificNotification(Class<? extends UserInterfaceTransaction> transactionType,
 				Class<? extends UserInterfaceNotification> notificationType)
 		{
-			requestedNotificationTypesBySource.put(transactionType, notificationType);
+			if (!requestedNotificationTypesBySource.containsEntry(transactionType, notificationType))
+			{
+				requestedNotificationTypesBySource.put(transactionType, notificationType);
+				addRoute(routesBySpecificNotification, new Route(transactionType, notificationType), this);
+			}
 
 			for (UserInterfaceNotification notification : notificationsByTransactionType.get(transactionType))
 			{
@@ -159,9 +193,28 @@ class UserInterfaceTransactionSession
 		@Override
 		public void postAction(UserInterfaceDirective action)
 		{
+			directiveCount++;
+			recordVersionedDirective(action);
 			postAction(action, action.createNotification());
 		}
 
+		@Override
+		public boolean replaceAction(UserInterfaceDirective replaced, UserInterfaceDirective action)
+		{
+			// the replaced directive is usually among the last posted
+			for (int i = pendingBroadcast.size() - 1; i >= 0; i--)
+			{
+				if (pendingBroadcast.get(i).actor == replaced)
+				{
+					pendingBroadcast.remove(i);
+					pendingBroadcast.add(new PendingBroadcast(action, action.createNotification()));
+					recordVersionedDirective(action);
+					return true;
+				}
+			}
+			return false;
+		}
+
 		@Override
 		public void postNotification(UserInterfaceNotification notification)
 		{
@@ -178,30 +231,59 @@ class UserInterfaceTransactionSession
 			}
 		}
 
-		void actionPostedToSession(UserInterfaceTransaction source, UserInterfaceNotification notification)
+		private void postNotificationToClient(UserInterfaceNotification notification)
 		{
-			if (source == this)
-			{
-				return;
-			}
+			transaction.postNotificationFromAnotherTransaction(notification);
+			postedNotifications.add(notification);
+		}
+	}
 
-			boolean requested = requestedNotificationSources.contains(source.getClass());
-			requested |= requestedNotificationTypes.contains(notification.getClass());
-			requested |= requestedNotificationTypesBySource.get(source.getClass()).contains(notification.getClass());
+	/**
+	 * Key of the routing table, by the types of the source transaction and the notification.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	private static class Route
+	{
+		private Class<? extends UserInterfaceTransaction> sourceType;
+		private Class<? extends UserInterfaceNotification> notificationType;
 
-			if (requested)
-			{
-				postNotificationToClient(notification);
-			}
+		Route(Class<? extends UserInterfaceTransaction> sourceType, Class<? extends UserInterfaceNotification> notificationType)
+		{
+			this.sourceType = sourceType;
+			this.notificationType = notificationType;
 		}
 
-		private void postNotificationToClient(UserInterfaceNotification notification)
+		@Override
+		public int hashCode()
 		{
-			transaction.postNotificationFromAnotherTransaction(notification);
-			postedNotifications.add(notification);
+			return (31 * sourceType.hashCode()) + notificationType.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Route))
+			{
+				return false;
+			}
+			Route other = (Route) o;
+			return (sourceType == other.sourceType) && (notificationType == other.notificationType);
 		}
 	}
 
+	/**
+	 * Outcome of one attempt at executing an outermost task.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	enum Attempt
+	{
+		COMMITTED,
+		ROLLED_BACK,
+		RETRY;
+	}
+
 	/**
 	 * Defines the sequence of phases of a <code>UserInterfaceTransaction</code>.
 	 * 
@@ -232,14 +314,61 @@ class UserInterfaceTransactionSession
 		POST_PROCESSING;
 	}
 
+	/**
+	 * Pooling mode (system property <code>pool-transactions</code>): each thread reuses the instances of
+	 * <code>UserInterfaceTransaction.Resettable.Pooled</code> classes, with their <code>TransactionSession</code>s,
+	 * instead of instantiating them for every session.
+	 */
+	static final boolean POOL_TRANSACTIONS = System.getProperty("pool-transactions") != null;
+
+	/**
+	 * Parallel commit mode (system property <code>parallel-commit</code>): when every transaction of a session is a
+	 * <code>UserInterfaceTransaction.Partitionable</code>, and their directives span several locks, the directives of
+	 * each lock are committed on a separate thread. Directives committed this way must not depend on state confined to
+	 * the session thread, such as the work accumulated by a <code>PostProcessor</code> in a thread local.
+	 */
+	static final boolean PARALLEL_COMMIT = System.getProperty("parallel-commit") != null;
+
+	private static final ClassValue<Boolean> POOLABLE = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> transactionType)
+		{
+			// the annotation is not inherited
+			return UserInterfaceTransaction.Resettable.class.isAssignableFrom(transactionType)
+					&& transactionType.isAnnotationPresent(UserInterfaceTransaction.Resettable.Pooled.class);
+		}
+	};
+
 	private Phase phase = Phase.IDLE;
 	private final Map<Class<? extends UserInterfaceTransaction>, TransactionSession> sessions = new HashMap<Class<? extends UserInterfaceTransaction>, TransactionSession>();
+	// reset and awaiting reuse by the next session which joins the same type, only in pooling mode
+	private final Map<Class<? extends UserInterfaceTransaction>, TransactionSession> idleSessions = new HashMap<Class<? extends UserInterfaceTransaction>, TransactionSession>();
 
 	// these are notification listeners
 	private final Multimap<Class<? extends UserInterfaceTransaction>, UserInterfaceNotification> notificationsByTransactionType = ArrayListMultimap.create();
 	private final Multimap<Class<? extends UserInterfaceNotification>, UserInterfaceNotification> notificationsByNotificationType = ArrayListMultimap.create();
 
+	// the sessions requesting broadcasts by source, by notification type, and by both, updated by each request and
+	// cleared with the sessions; the probe is reused for lookups, since the session is confined to its thread
+	private final Map<Class<? extends UserInterfaceTransaction>, List<TransactionSession>> routesBySource = new HashMap<Class<? extends UserInterfaceTransaction>, List<TransactionSession>>();
+	private final Map<Class<? extends UserInterfaceNotification>, List<TransactionSession>> routesByNotificationType = new HashMap<Class<? extends UserInterfaceNotification>, List<TransactionSession>>();
+	private final Map<Route, List<TransactionSession>> routesBySpecificNotification = new HashMap<Route, List<TransactionSession>>();
+	private final Route routeProbe = new Route(null, null);
+	private int routeCount = 0;
+
 	private final List<UserInterfaceTask> taskStack = new ArrayList<UserInterfaceTask>();
+	/**
+	 * <code>System.nanoTime()</code> of the first attempt at the outermost task, which is kept through its retries so
+	 * that the age of the task decides which side of a crosslock yields.
+	 */
+	private long firstAttempt;
+	// directives on actors which publish previews, while any query property is tracked for the snapshots
+	private final List<UserInterfaceDirective> versionedDirectives = new ArrayList<UserInterfaceDirective>();
+	// of the outermost task, for the duration of each attempt
+	private ClassMetrics taskMetrics;
+	private long phaseStart;
+	// set by the TransactionRegistry as it creates the session on its thread, which is virtual or not for life
+	boolean onVirtualThread = false;
 
 	List<UserInterfaceDirective> getActionsOn(UserInterfaceActor actor)
 	{
@@ -251,7 +380,69 @@ class UserInterfaceTransactionSession
 		return actions;
 	}
 
+	boolean isIdle()
+	{
+		return taskStack.isEmpty();
+	}
+
 	void executeTask(UserInterfaceTask task) throws UserInterfaceTask.ConcurrentAccessException
+	{
+		if (isIdle())
+		{
+			executeOutermostTask(task);
+		}
+		else
+		{
+			validatePhase(task);
+
+			task.setSession(this);
+			taskStack.add(task);
+		}
+	}
+
+	/**
+	 * Execute <code>task</code> as the outermost task of this session, retrying it on collision as its
+	 * <code>RetryPolicy</code> allows.
+	 * 
+	 * @return whether the task committed
+	 */
+	boolean executeOutermostTask(UserInterfaceTask task) throws ConcurrentAccessException
+	{
+		long firstAttempt = System.nanoTime();
+		Attempt attempt;
+		for (int retryCount = 0; (attempt = attemptTask(task, retryCount, firstAttempt)) == Attempt.RETRY; retryCount++)
+		{
+			task.getRetryPolicy().awaitRetry(retryCount);
+		}
+		return attempt == Attempt.COMMITTED;
+	}
+
+	/**
+	 * Make one attempt at <code>task</code> as the outermost task of this session, leaving the session idle. The caller
+	 * is responsible for scheduling the next attempt when the result is <code>RETRY</code>.
+	 * 
+	 * @param retryCount
+	 *            the number of attempts which have already been retried
+	 * @param firstAttempt
+	 *            the <code>System.nanoTime()</code> at which the first attempt began
+	 * @throws ConcurrentAccessException
+	 *             if the attempt collided and the task may not be retried again
+	 */
+	Attempt attemptTask(UserInterfaceTask task, int retryCount, long firstAttempt) throws ConcurrentAccessException
+	{
+		if (!isIdle())
+		{
+			throw new IllegalStateException("Attempt to begin an outermost task on a thread which is executing another task.");
+		}
+		validatePhase(task);
+
+		task.setSession(this);
+		taskStack.add(task);
+		this.firstAttempt = firstAttempt;
+		return attemptOutermostTask(task, retryCount, firstAttempt);
+	}
+
+	private void validatePhase(UserInterfaceTask task)
 	{
 		switch (phase)
 		{
@@ -270,21 +461,6 @@ class UserInterfaceTransactionSession
 				}
 				break;
 		}
-
-		task.setSession(this);
-
-		taskStack.add(task);
-		if (taskStack.size() == 1)
-		{
-			try
-			{
-				executeOutermostTask(task);
-			}
-			finally
-			{
-				taskStack.remove(taskStack.size() - 1);
-			}
-		}
 	}
 
 	private boolean executeAndBroadcast(UserInterfaceTask task)
@@ -343,62 +519,78 @@ class UserInterfaceTransactionSession
 		}
 	}
 
-	private void executeOutermostTask(UserInterfaceTask task) throws ConcurrentAccessException
+	private Attempt attemptOutermostTask(UserInterfaceTask task, int retryCount, long firstAttempt) throws ConcurrentAccessException
 	{
-		int retryCount = 0;
-
-		while (true)
+		boolean reachedCommit = false;
+		taskMetrics = TransactionMetrics.getInstance().forTask(task.getClass());
+		taskMetrics.sessionStarted();
+		try
 		{
-			boolean reachedCommit = false;
+			boolean successfulExecution = false;
 			try
 			{
-				boolean successfulExecution = false;
-				try
+				if (!task.getDeclaredActors().isEmpty())
 				{
-					successfulExecution = executeAndBroadcast(task);
+					beginSession();
+					LockRegistry.getInstance().lockForAssembly(task.getDeclaredActors());
+				}
+				successfulExecution = executeAndBroadcast(task);
 
-					while (taskStack.size() > 1)
-					{
-						// the sequence could be made to better match the task submission if necessary
-						UserInterfaceTask subtask = taskStack.remove(taskStack.size() - 1);
-						executeAndBroadcast(subtask);
-					}
+				while (taskStack.size() > 1)
+				{
+					// the sequence could be made to better match the task submission if necessary
+					UserInterfaceTask subtask = taskStack.remove(taskStack.size() - 1);
+					executeAndBroadcast(subtask);
 				}
-				finally
+			}
+			finally
+			{
+				if (phase == Phase.ASSEMBLY)
 				{
-					if (phase == Phase.ASSEMBLY)
+					reachedCommit = true;
+					if (successfulExecution)
 					{
-						reachedCommit = true;
-						if (successfulExecution)
-						{
-							/**
-							 * @JTourBusStop 4.1, ReCopyHandler participates in mouse and keyboard transactions,
-							 *               Internal transaction engine commits:
-							 * 
-							 *               After executing all tasks in the current transaction (above), this
-							 *               transaction is committed (4.11), resulting in the commit of each of its
-							 *               actions (4.12).
-							 */
-							commitSession();
-						}
-						else
-						{
-							rollbackSession();
-						}
+						/**
+						 * @JTourBusStop 4.1, ReCopyHandler participates in mouse and keyboard transactions, Internal
+						 *               transaction engine commits:
+						 * 
+						 *               After executing all tasks in the current transaction (above), this transaction
+						 *               is committed (4.11), resulting in the commit of each of its actions (4.12).
+						 */
+						commitSession();
+					}
+					else
+					{
+						rollbackSession();
 					}
 				}
-				break;
 			}
-			catch (RetryException e)
+			if (successfulExecution)
 			{
-				if (retryCount >= task.getRetryCount())
-				{
-					throw new ConcurrentAccessException("Failed to acquire all necessary locks for this task after " + task.getRetryCount() + " retries.", e);
-				}
+				taskMetrics.sessionCommitted();
+				return Attempt.COMMITTED;
 			}
-			System.out.println("Retry (reach commit: " + reachedCommit + ")");
-			retryCount++;
-			task.setSession(this);
+			else
+			{
+				taskMetrics.sessionRolledBack();
+				return Attempt.ROLLED_BACK;
+			}
+		}
+		catch (RetryException e)
+		{
+			if (!task.allowRetry(retryCount, System.nanoTime() - firstAttempt))
+			{
+				taskMetrics.sessionFailed();
+				throw new ConcurrentAccessException("Failed to acquire all necessary locks for this task after " + retryCount + " retries.", e);
+			}
+			Log.out(Tag.LOCK_DEBUG, "Retry %s after %d retries (reached commit: %s)", task.getClass().getSimpleName(), retryCount, reachedCommit);
+			return Attempt.RETRY;
+		}
+		finally
+		{
+			// subtasks of a failed attempt are submitted again by the retry
+			taskStack.clear();
+			taskMetrics = null;
 		}
 	}
 
@@ -409,12 +601,25 @@ class UserInterfaceTransactionSession
 			throw new IllegalStateException("Attempt to fail a task when no task is in progress (phase is " + phase + ")");
 		}
 
+		taskMetrics.sessionCollided(status);
+		for (TransactionSession session : sessions.values())
+		{
+			session.metrics.sessionCollided(status);
+		}
+		recordRollbackEvent(status.name());
+
 		LockRegistry.getInstance().emergencyReleaseContext();
 		terminateSession();
 		taskStack.get(taskStack.size() - 1).returnAndRetry(status);
 	}
 
 	private UserInterfaceTransaction beginSession(Class<? extends UserInterfaceTransaction> transactionType)
+	{
+		beginSession();
+		return joinSession(transactionType);
+	}
+
+	private void beginSession()
 	{
 		if (phase != Phase.IDLE)
 		{
@@ -425,10 +630,24 @@ class UserInterfaceTransactionSession
 		{
 			postProcessor.sessionStarting();
 		}
-		LockRegistry.getInstance().beginSession();
+		if (taskStack.isEmpty())
+		{
+			LockRegistry.getInstance().beginSession(System.nanoTime(), 0L);
+		}
+		else
+		{
+			LockRegistry.getInstance().beginSession(firstAttempt, taskStack.get(0).getLockWaitLimit());
+		}
 
 		phase = Phase.ASSEMBLY;
-		return joinSession(transactionType);
+		phaseStart = System.nanoTime();
+
+		SessionEvents.Begin event = new SessionEvents.Begin();
+		if (event.shouldCommit())
+		{
+			event.taskType = getTaskType();
+			event.commit();
+		}
 	}
 
 	UserInterfaceTransaction joinSession(Class<? extends UserInterfaceTransaction> transactionType)
@@ -444,19 +663,25 @@ class UserInterfaceTransactionSession
 		TransactionSession session = sessions.get(transactionType);
 		if (session == null)
 		{
-			UserInterfaceTransaction transaction = null;
-			try
+			session = POOL_TRANSACTIONS ? idleSessions.remove(transactionType) : null;
+			if (session == null)
 			{
-				transaction = transactionType.newInstance();
-			}
-			catch (Throwable t)
-			{
-				throw new RuntimeException(
-						"Failed to instantiate a transaction. All transactions must have default, no-arg constructors. This constitutes total application failure.",
-						t);
+				UserInterfaceTransaction transaction = null;
+				try
+				{
+					transaction = TransactionFactories.get(transactionType).createTransaction();
+				}
+				catch (Throwable t)
+				{
+					throw new RuntimeException(
+							"Failed to instantiate a transaction. All transactions must have default, no-arg constructors. This constitutes total application failure.",
+							t);
+				}
+				session = new TransactionSession(transaction);
 			}
+			UserInterfaceTransaction transaction = session.transaction;
 
-			session = new TransactionSession(transaction);
+			session.activate();
 			LockRegistry.getInstance().beginTransaction(transaction);
 
 			for (TransactionSession existingSession : sessions.values())
@@ -494,21 +719,27 @@ class UserInterfaceTransactionSession
 			throw new IllegalStateException("Attempt to commit a session on a thread having a session in " + phase + " phase.");
 		}
 		phase = Phase.COMMIT;
+		long commitStart = System.nanoTime();
+		taskMetrics.recordAssembly(commitStart - phaseStart);
+		SessionEvents.Commit event = new SessionEvents.Commit();
+		event.begin();
 
 		// commit the regular transactions
 		LockRegistry.getInstance().commitLock();
-		for (TransactionSession session : sessions.values())
-		{
-			if (session.transaction.isEmpty())
-			{
-				continue;
-			}
+		commitTransactions();
+		LockRegistry.getInstance().commitUnlock();
+		taskMetrics.recordCommit(System.nanoTime() - commitStart);
 
-			session.transaction.commitTransaction();
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.taskType = getTaskType();
+			event.transactionTypes = describeTransactions();
+			event.directiveCount = countDirectives();
+			event.commit();
 		}
-		LockRegistry.getInstance().commitUnlock();
 
-		sessions.clear();
+		releaseSessions();
 		postProcessSession();
 	}
 
@@ -519,6 +750,9 @@ class UserInterfaceTransactionSession
 			throw new IllegalStateException("Attempt to post-process a session on a thread having a session in " + phase + " phase.");
 		}
 		phase = Phase.POST_PROCESSING;
+		long postProcessingStart = System.nanoTime();
+		SessionEvents.PostProcessing event = new SessionEvents.PostProcessing();
+		event.begin();
 
 		for (UserInterfaceTransaction.PostProcessor postProcessor : TransactionRegistryCoordinator.getInstance().getPostProcessors())
 		{
@@ -534,32 +768,110 @@ class UserInterfaceTransactionSession
 
 		// commit the post-processing transactions
 		LockRegistry.getInstance().commitLock();
+		commitTransactions();
+		LockRegistry.getInstance().commitUnlock();
+
+		for (UserInterfaceTransaction.PostProcessor postProcessor : TransactionRegistryCoordinator.getInstance().getPostProcessors())
+		{
+			postProcessor.postProcessingCommitted();
+		}
+
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.taskType = getTaskType();
+			event.transactionTypes = describeTransactions();
+			event.directiveCount = countDirectives();
+			event.commit();
+		}
+
+		terminateSession();
+		taskMetrics.recordPostProcessing(System.nanoTime() - postProcessingStart);
+	}
+
+	private void recordVersionedDirective(UserInterfaceDirective action)
+	{
+		if (SnapshotVersions.isTracking() && action.getActor().hasPreviews())
+		{
+			versionedDirectives.add(action);
+		}
+	}
+
+	private void commitTransactions()
+	{
+		SnapshotVersions.Commit versions = versionedDirectives.isEmpty() ? null : SnapshotVersions.prepare(versionedDirectives);
+		try
+		{
+			if (!(PARALLEL_COMMIT && commitPartitions()))
+			{
+				commitSequentially();
+			}
+		}
+		finally
+		{
+			// even a failed commit publishes the values it has left, which its chains must not keep from eviction
+			if (versions != null)
+			{
+				versions.publish();
+			}
+			versionedDirectives.clear();
+		}
+	}
+
+	private void commitSequentially()
+	{
 		for (TransactionSession session : sessions.values())
 		{
+			session.metrics.sessionCommitted();
 			if (session.transaction.isEmpty())
 			{
 				continue;
 			}
 
+			long commitStart = System.nanoTime();
 			session.transaction.commitTransaction();
+			session.metrics.recordCommit(System.nanoTime() - commitStart);
 		}
-		LockRegistry.getInstance().commitUnlock();
+	}
 
-		for (UserInterfaceTransaction.PostProcessor postProcessor : TransactionRegistryCoordinator.getInstance().getPostProcessors())
+	private boolean commitPartitions()
+	{
+		List<UserInterfaceTransaction> transactions = new ArrayList<UserInterfaceTransaction>(sessions.size());
+		for (TransactionSession session : sessions.values())
 		{
-			postProcessor.postProcessingCommitted();
+			transactions.add(session.transaction);
 		}
 
-		terminateSession();
+		long commitStart = System.nanoTime();
+		if (!PartitionedCommit.commit(transactions))
+		{
+			return false;
+		}
+
+		// the transactions were committed together, so each is charged the whole commit
+		long commitTime = System.nanoTime() - commitStart;
+		for (TransactionSession session : sessions.values())
+		{
+			session.metrics.sessionCommitted();
+			if (!session.transaction.isEmpty())
+			{
+				session.metrics.recordCommit(commitTime);
+			}
+		}
+		return true;
 	}
 
 	void rollbackSession()
 	{
 		for (TransactionSession session : sessions.values())
 		{
+			session.metrics.sessionRolledBack();
 			session.transaction.transactionRolledBack();
 		}
+		recordRollbackEvent("ROLLED_BACK");
 
+		// the thread may be pooled, so it must not carry the locks of this session into its next task
+		LockRegistry.getInstance().emergencyReleaseContext();
 		terminateSession();
 
 		try
@@ -576,24 +888,151 @@ class UserInterfaceTransactionSession
 		}
 	}
 
+	private void recordRollbackEvent(String cause)
+	{
+		SessionEvents.Rollback event = new SessionEvents.Rollback();
+		if (event.shouldCommit())
+		{
+			event.taskType = getTaskType();
+			event.transactionTypes = describeTransactions();
+			event.directiveCount = countDirectives();
+			event.cause = cause;
+			event.commit();
+		}
+	}
+
+	private Class<?> getTaskType()
+	{
+		return taskStack.isEmpty() ? null : taskStack.get(0).getClass();
+	}
+
+	private String describeTransactions()
+	{
+		StringBuilder buffer = new StringBuilder();
+		for (Class<? extends UserInterfaceTransaction> transactionType : sessions.keySet())
+		{
+			if (buffer.length() > 0)
+			{
+				buffer.append(", ");
+			}
+			buffer.append(transactionType.getSimpleName());
+		}
+		return buffer.toString();
+	}
+
+	private int countDirectives()
+	{
+		int count = 0;
+		for (TransactionSession session : sessions.values())
+		{
+			count += session.directiveCount;
+		}
+		return count;
+	}
+
+	private <K> void addRoute(Map<K, List<TransactionSession>> routes, K key, TransactionSession session)
+	{
+		List<TransactionSession> recipients = routes.get(key);
+		if (recipients == null)
+		{
+			recipients = new ArrayList<TransactionSession>(2);
+			routes.put(key, recipients);
+		}
+		recipients.add(session);
+		routeCount++;
+	}
+
+	private List<TransactionSession> getRoute(UserInterfaceTransaction source, UserInterfaceNotification notification)
+	{
+		if (routeCount == 0)
+		{
+			return Collections.emptyList();
+		}
+
+		List<TransactionSession> bySource = routesBySource.isEmpty() ? null : routesBySource.get(source.getClass());
+		List<TransactionSession> byType = routesByNotificationType.isEmpty() ? null : routesByNotificationType.get(notification.getClass());
+		List<TransactionSession> bySpecificNotification = null;
+		if (!routesBySpecificNotification.isEmpty())
+		{
+			routeProbe.sourceType = source.getClass();
+			routeProbe.notificationType = notification.getClass();
+			bySpecificNotification = routesBySpecificNotification.get(routeProbe);
+		}
+
+		if (byType == null && bySpecificNotification == null)
+		{
+			return (bySource == null) ? Collections.<TransactionSession> emptyList() : bySource;
+		}
+		if (bySource == null && bySpecificNotification == null)
+		{
+			return byType;
+		}
+		if (bySource == null && byType == null)
+		{
+			return bySpecificNotification;
+		}
+
+		// a session requesting the broadcast in more than one way receives it once
+		List<TransactionSession> recipients = new ArrayList<TransactionSession>();
+		mergeRoute(recipients, bySource);
+		mergeRoute(recipients, byType);
+		mergeRoute(recipients, bySpecificNotification);
+		return recipients;
+	}
+
+	private void mergeRoute(List<TransactionSession> recipients, List<TransactionSession> route)
+	{
+		if (route != null)
+		{
+			for (TransactionSession session : route)
+			{
+				if (!recipients.contains(session))
+				{
+					recipients.add(session);
+				}
+			}
+		}
+	}
+
 	private void terminateSession()
 	{
 		notificationsByNotificationType.clear();
 		notificationsByTransactionType.clear();
 		// TODO: confusing to call this "sessions" when it refers to the transactions within a single UITxnSession: one
 		// is session per thread, the other is session per txn
-		sessions.clear();
+		releaseSessions();
 		phase = Phase.IDLE;
 	}
 
+	private void releaseSessions()
+	{
+		if (POOL_TRANSACTIONS)
+		{
+			for (Map.Entry<Class<? extends UserInterfaceTransaction>, TransactionSession> entry : sessions.entrySet())
+			{
+				if (POOLABLE.get(entry.getKey()))
+				{
+					entry.getValue().reset();
+					idleSessions.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		sessions.clear();
+		routesBySource.clear();
+		routesByNotificationType.clear();
+		routesBySpecificNotification.clear();
+		routeCount = 0;
+		versionedDirectives.clear();
+	}
+
 	void broadcastAction(UserInterfaceActor actor, UserInterfaceTransaction source, UserInterfaceNotification notification)
 	{
 		notificationsByTransactionType.put(source.getClass(), notification);
 		notificationsByNotificationType.put(notification.getClass(), notification);
 
-		for (TransactionSession session : sessions.values())
+		for (TransactionSession session : getRoute(source, notification))
 		{
-			session.actionPostedToSession(source, notification);
+			session.postNotificationToClient(notification);
 		}
 
 		PendingTransaction contributions = new PendingTransaction();
@@ -608,9 +1047,9 @@ class UserInterfaceTransactionSession
 
 	void broadcastNotification(UserInterfaceTransaction source, UserInterfaceNotification notification)
 	{
-		for (TransactionSession session : sessions.values())
+		for (TransactionSession session : getRoute(source, notification))
 		{
-			session.actionPostedToSession(source, notification);
+			session.postNotificationToClient(notification);
 		}
 
 		if (notification instanceof UserInterfaceNotification.Directed)
@@ -10,11 +10,21 @@
  */
 package org.hawkinssoftware.azia.core.lock;
 
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.hawkinssoftware.azia.core.lock.UserInterfaceLockDomains.LockManagement;
+import org.hawkinssoftware.azia.core.metrics.TransactionMetrics;
 import org.hawkinssoftware.rns.core.lock.HookedLock;
 import org.hawkinssoftware.rns.core.lock.HookedReadWriteLock;
 import org.hawkinssoftware.rns.core.lock.LockHook;
@@ -51,6 +61,9 @@ class AutonomousLock extends UserInterfaceLock
 	{
 		SUCCESS,
 		BUSY,
+		/**
+		 * The wait was abandoned because this thread is the victim of a crosslock.
+		 */
 		INTERRUPTED,
 		TIMEOUT;
 	}
@@ -95,9 +108,34 @@ class AutonomousLock extends UserInterfaceLock
 		}
 	}
 
+	/**
+	 * Floor of the bound on a lock wait, in milliseconds (system property <code>lock-wait-minimum</code>).
+	 */
+	private static final long MINIMUM_WAIT = TimeUnit.MILLISECONDS.toNanos(Long.getLong("lock-wait-minimum", 250L));
+	/**
+	 * Multiple of the typical hold time of a lock for which a thread may wait for it (system property
+	 * <code>lock-wait-hold-multiplier</code>).
+	 */
+	private static final long HOLD_MULTIPLIER = Long.getLong("lock-wait-hold-multiplier", 10L);
+
 	private final HookedLock<ReentrantLock> assemblyLock;
 	private final HookedReadWriteLock commitLock;
 
+	// edges of the wait-for graph: maintained by the holding LockTransactionContexts, walked by the CrossLockValidator
+	private final AtomicReference<LockTransactionContext> fullHolder = new AtomicReference<LockTransactionContext>();
+	private final Set<LockTransactionContext> readHolders = Collections
+			.newSetFromMap(new ConcurrentHashMap<LockTransactionContext, Boolean>());
+
+	// threads parked in awaitUntil(), in arrival order: each is unparked whenever any level of this lock is released
+	private final Queue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+	// incremented by the holder of the commit lock as it releases it, so an optimistic reader can detect the commit
+	private volatile long version = 0L;
+
+	// written only by the holder of the assembly lock; the estimate is read by any waiter
+	private long holdStart;
+	private volatile long holdEstimate = 0L;
+
 	AutonomousLock(String description)
 	{
 		super(description);
@@ -140,6 +178,36 @@ class AutonomousLock extends UserInterfaceLock
 		return commitLock.writeLock().isHeldByCurrentThread();
 	}
 
+	/**
+	 * @return a stamp to validate after reading the actors of this lock without locking it, or -1 if another thread
+	 *         is committing them
+	 */
+	long readStamp()
+	{
+		long stamp = version;
+		return isCommitting() ? -1L : stamp;
+	}
+
+	/**
+	 * @return true if no other thread has committed the actors of this lock since <code>stamp</code> was taken
+	 */
+	boolean validateStamp(long stamp)
+	{
+		// the optimistic reads must not be reordered after the validation
+		VarHandle.acquireFence();
+		return (stamp == version) && !isCommitting();
+	}
+
+	boolean isCommitLocked()
+	{
+		return commitLock.isWriteLocked();
+	}
+
+	private boolean isCommitting()
+	{
+		return commitLock.isWriteLocked() && !commitLock.writeLock().isHeldByCurrentThread();
+	}
+
 	Result readLock(RequestMode mode)
 	{
 		if (commitLock.getReadHoldCount() > 0)
@@ -160,29 +228,19 @@ class AutonomousLock extends UserInterfaceLock
 		}
 		else
 		{
-			try
-			{
-				if (commitLock.readLock().tryLock(50, TimeUnit.MILLISECONDS))
-				{
-					return Result.SUCCESS;
-				}
-				else
-				{
-					return Result.TIMEOUT;
-				}
-			}
-			catch (InterruptedException e)
-			{
-				return Result.INTERRUPTED;
-			}
+			return await(commitLock.readLock());
 		}
 	}
 
 	void clearReadLocks()
 	{
-		while (commitLock.getReadHoldCount() > 0)
+		if (commitLock.getReadHoldCount() > 0)
 		{
-			commitLock.readLock().unlock();
+			while (commitLock.getReadHoldCount() > 0)
+			{
+				commitLock.readLock().unlock();
+			}
+			wakeWaiters();
 		}
 	}
 
@@ -198,7 +256,7 @@ class AutonomousLock extends UserInterfaceLock
 		{
 			if (assemblyLock.tryLock())
 			{
-				return Result.SUCCESS;
+				return assemblyAcquired();
 			}
 			else
 			{
@@ -207,21 +265,8 @@ class AutonomousLock extends UserInterfaceLock
 		}
 		else
 		{
-			try
-			{
-				if (assemblyLock.tryLock(50, TimeUnit.MILLISECONDS))
-				{
-					return Result.SUCCESS;
-				}
-				else
-				{
-					return Result.TIMEOUT;
-				}
-			}
-			catch (InterruptedException e)
-			{
-				return Result.INTERRUPTED;
-			}
+			Result result = await(assemblyLock);
+			return (result == Result.SUCCESS) ? assemblyAcquired() : result;
 		}
 	}
 
@@ -253,21 +298,7 @@ class AutonomousLock extends UserInterfaceLock
 		}
 		else
 		{
-			try
-			{
-				if (commitLock.writeLock().tryLock(50, TimeUnit.MILLISECONDS))
-				{
-					return Result.SUCCESS;
-				}
-				else
-				{
-					return Result.TIMEOUT;
-				}
-			}
-			catch (InterruptedException e)
-			{
-				return Result.INTERRUPTED;
-			}
+			return await(commitLock.writeLock());
 		}
 	}
 
@@ -279,22 +310,200 @@ class AutonomousLock extends UserInterfaceLock
 			return;
 		}
 
+		recordHold();
 		assemblyLock.unlock();
 		clearReadLocks();
+		version++;
 		commitLock.writeLock().unlock();
+		wakeWaiters();
 	}
 
 	void emergencyReleaseAllLock()
 	{
 		clearReadLocks();
+		if (assemblyLock.getLock().isHeldByCurrentThread())
+		{
+			recordHold();
+		}
 		while (assemblyLock.getLock().isHeldByCurrentThread())
 		{
 			assemblyLock.unlock();
 		}
+		if (commitLock.writeLock().isHeldByCurrentThread())
+		{
+			// the commit may have been partially applied
+			version++;
+		}
 		while (commitLock.writeLock().isHeldByCurrentThread())
 		{
 			commitLock.writeLock().unlock();
 		}
+		wakeWaiters();
+	}
+
+	/**
+	 * Wait for <code>lock</code> until it is acquired or the bound of the wait expires. The thread parks in a loop of
+	 * its own rather than in the queue of <code>lock</code>, so that it can be woken for either of two reasons: every
+	 * release of this lock unparks all waiters, in arrival order, to try again at once; and the
+	 * <code>CrossLockValidator</code> unparks a waiter it chooses as the victim of a crosslock, which then abandons the
+	 * wait. No interrupt is involved: an interrupt of the application neither abandons the wait nor is lost, but is
+	 * restored when the wait ends.
+	 */
+	private Result await(Lock lock)
+	{
+		LockWaitEvent event = new LockWaitEvent();
+		Thread holder = event.isEnabled() ? getHolderThread() : null;
+		event.begin();
+
+		LockTransactionContext context = LockTransactionContext.get();
+		long start = System.nanoTime();
+		Result result = awaitUntil(lock, context, start + getWaitBound(context));
+		TransactionMetrics.getInstance().recordLockWait(System.nanoTime() - start);
+
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.lock = toString();
+			event.level = getLevel(lock).name();
+			event.holder = holder;
+			event.outcome = result.name();
+			event.commit();
+		}
+		return result;
+	}
+
+	private Result awaitUntil(Lock lock, LockTransactionContext context, long deadline)
+	{
+		Thread thread = Thread.currentThread();
+		boolean interrupted = false;
+		// registered before the first attempt, so that a release between the attempt and the park is not missed
+		waiters.add(thread);
+		context.beginAwait();
+		try
+		{
+			while (true)
+			{
+				if (lock.tryLock())
+				{
+					// whichever wait closed the cycle, this one is over, so the cycle is already broken
+					context.victim = false;
+					return Result.SUCCESS;
+				}
+				if (context.victim)
+				{
+					return Result.INTERRUPTED;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0L)
+				{
+					return Result.TIMEOUT;
+				}
+				LockSupport.parkNanos(this, remaining);
+				// a pending interrupt would return every park at once, so it is held until the wait ends
+				interrupted |= Thread.interrupted();
+			}
+		}
+		finally
+		{
+			context.endAwait();
+			waiters.remove(thread);
+			if (interrupted)
+			{
+				thread.interrupt();
+			}
+		}
+	}
+
+	private void wakeWaiters()
+	{
+		for (Thread waiter : waiters)
+		{
+			LockSupport.unpark(waiter);
+		}
+	}
+
+	/**
+	 * Bound on a wait for this lock. The bound only expires when the holder keeps the lock far longer than usual:
+	 * waits are not aborted by a crosslock, which the <code>CrossLockValidator</code> resolves as it forms. Unless the
+	 * current task specifies its own limit, the bound adapts to the typical hold time of this lock, so that a lock
+	 * which is legitimately held for a long commit does not time out its waiters.
+	 */
+	private long getWaitBound(LockTransactionContext context)
+	{
+		long taskLimit = context.getWaitLimit();
+		if (taskLimit > 0L)
+		{
+			return taskLimit;
+		}
+		return Math.max(MINIMUM_WAIT, holdEstimate * HOLD_MULTIPLIER);
+	}
+
+	private Result assemblyAcquired()
+	{
+		holdStart = System.nanoTime();
+		return Result.SUCCESS;
+	}
+
+	// exponentially weighted moving average of the assembly hold time, from assembly through commit or release
+	private void recordHold()
+	{
+		long hold = System.nanoTime() - holdStart;
+		long estimate = holdEstimate;
+		holdEstimate = (estimate == 0L) ? hold : estimate + ((hold - estimate) >> 3);
+	}
+
+	void addFullHolder(LockTransactionContext holder)
+	{
+		fullHolder.set(holder);
+	}
+
+	void removeFullHolder(LockTransactionContext holder)
+	{
+		// the lock may already have been taken by another thread, which will have replaced the holder
+		fullHolder.compareAndSet(holder, null);
+	}
+
+	void addReadHolder(LockTransactionContext holder)
+	{
+		readHolders.add(holder);
+	}
+
+	void removeReadHolder(LockTransactionContext holder)
+	{
+		readHolders.remove(holder);
+	}
+
+	/**
+	 * Add every context currently holding this lock to <code>holders</code>, other than <code>exclude</code>.
+	 */
+	void collectHolders(Collection<LockTransactionContext> holders, LockTransactionContext exclude)
+	{
+		LockTransactionContext holder = fullHolder.get();
+		if ((holder != null) && (holder != exclude))
+		{
+			holders.add(holder);
+		}
+		for (LockTransactionContext readHolder : readHolders)
+		{
+			if (readHolder != exclude)
+			{
+				holders.add(readHolder);
+			}
+		}
+	}
+
+	private Thread getHolderThread()
+	{
+		LockTransactionContext holder = fullHolder.get();
+		if (holder != null)
+		{
+			return holder.thread;
+		}
+		for (LockTransactionContext readHolder : readHolders)
+		{
+			return readHolder.thread;
+		}
+		return null;
 	}
 
 	@Override
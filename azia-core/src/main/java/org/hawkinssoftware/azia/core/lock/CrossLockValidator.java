@@ -11,7 +11,6 @@
 package org.hawkinssoftware.azia.core.lock;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,7 +25,19 @@ import org.hawkinssoftware.rns.core.role.DomainRole;
 // TODO: consider @ExecutionPath.NoFrame on everything in this package (introduce config file?)
 
 /**
- * DOC comment task awaits.
+ * Detects crosslocks in the wait-for graph of the transaction threads. The graph is maintained incrementally: each
+ * <code>LockTransactionContext</code> registers itself as a holder of the <code>AutonomousLock</code>s it takes and
+ * publishes the lock it awaits, so no global snapshot is ever assembled. Since every cycle is broken as it is formed,
+ * the graph is acyclic before each new edge, and any cycle must pass through the new edge. The check therefore walks
+ * only the threads reachable from the awaited lock.
+ * 
+ * The victim is the youngest thread in the cycle by the start time of its task's first attempt, which a task keeps
+ * through its retries. So a long task cannot be starved by short ones: each retry leaves it older relative to the
+ * competition, until it wins every crosslock. A session which acquired its declared locks in
+ * <code>UserInterfaceLock.INDEX_ORDER</code>, and has taken no lock lazily since, is not a victim, through its
+ * commit; since such sessions alone should not form a cycle, some other thread is normally eligible, and otherwise
+ * the youngest of the cycle is chosen regardless, so that the cycle is still broken. When the victim is not
+ * the thread closing the cycle, it is flagged, and its wait is woken to abandon it.
  * 
  * @author Byron Hawkins
  */
@@ -35,131 +46,82 @@ import org.hawkinssoftware.rns.core.role.DomainRole;
 @HookSemaphores(hook = LockAccessValidator.class, instance = "getInstance()")
 class CrossLockValidator
 {
-	
-	/**
-	 * DOC comment task awaits.
-	 * 
-	 * @author Byron Hawkins
-	 */
-	@ExecutionPath.NoFrame
-	@DomainRole.Join(membership = { ThreadStateValidation.class, LockManagement.class })
-	@HookSemaphores(hook = LockAccessValidator.class, instance = "getInstance()")
-	private static class WaitingThread
-	{
-		final LockTransactionContext context;
-		WaitingThread blocker;
-
-		public WaitingThread(LockTransactionContext context)
-		{
-			this.context = context;
-		}
-
-		void findBlocker(List<WaitingThread> waiters)
-		{
-			blocker = null;
-			for (WaitingThread waiter : waiters)
-			{
-				if (waiter == this)
-				{
-					continue;
-				}
-
-				if (waiter.context.getFullLocks().contains(context.awaitedLock))
-				{
-					blocker = waiter;
-					break;
-				}
-				if (waiter.context.readOnlyLocks.contains(context.awaitedLock))
-				{
-					blocker = waiter;
-					break;
-				}
-			}
-		}
-	}
-
-	static LockState checkCrossLock(AutonomousLock busyLock)
+	static LockState checkCrossLock(LockTransactionContext waiter, AutonomousLock awaitedLock)
 	{
 		synchronized (LockTransactionContext.class)
 		{
-			Collection<LockTransactionContext> contexts = LockTransactionContext.PerThread.getAll();
-			List<WaitingThread> waiters = new ArrayList<WaitingThread>();
-			for (LockTransactionContext context : contexts)
-			{
-				if (context.isTransactionActive() && context.isWaiting())
-				{
-					waiters.add(new WaitingThread(context));
-				}
-			}
-			if (waiters.size() < 2)
+			List<LockTransactionContext> pending = new ArrayList<LockTransactionContext>();
+			awaitedLock.collectHolders(pending, waiter);
+			if (pending.isEmpty())
 			{
 				return LockState.OK;
 			}
 
-			for (WaitingThread waiter : waiters)
+			// each reached context, mapped to the context whose wait led to it (null for the holders of `awaitedLock)
+			Map<LockTransactionContext, LockTransactionContext> reachedFrom = new HashMap<LockTransactionContext, LockTransactionContext>();
+			for (LockTransactionContext holder : pending)
 			{
-				waiter.findBlocker(waiters);
+				reachedFrom.put(holder, null);
 			}
-			for (int i = waiters.size() - 1; i >= 0; i--)
+
+			List<LockTransactionContext> blockers = new ArrayList<LockTransactionContext>();
+			while (!pending.isEmpty())
 			{
-				if (waiters.get(i).blocker == null)
+				LockTransactionContext holder = pending.remove(pending.size() - 1);
+				AutonomousLock blockingLock = holder.awaitedLock;
+				if (blockingLock == null)
 				{
-					waiters.remove(i);
+					continue;
 				}
-			}
-			if (waiters.size() < 2)
-			{
-				return LockState.OK;
-			}
 
-			Map<LockTransactionContext, WaitingThread> waitersByContext = new HashMap<LockTransactionContext, WaitingThread>();
-			for (WaitingThread waiter : waiters)
-			{
-				waitersByContext.put(waiter.context, waiter);
-			}
-
-			List<WaitingThread> circuit = new ArrayList<WaitingThread>();
-			List<WaitingThread> victims = new ArrayList<WaitingThread>();
-			do
-			{
-				WaitingThread initial = waitersByContext.values().iterator().next();
-				circuit.add(initial);
-				waitersByContext.remove(initial.context);
-
-				while (true)
+				blockers.clear();
+				blockingLock.collectHolders(blockers, holder);
+				for (LockTransactionContext blocker : blockers)
 				{
-					WaitingThread blocker = waitersByContext.remove(circuit.get(circuit.size() - 1).blocker.context);
-					if (blocker == null)
+					if (blocker == waiter)
 					{
-						System.err.println("Warning: blocker not found for waiter!");
+						return resolveCrossLock(waiter, holder, reachedFrom);
 					}
-					circuit.add(blocker);
-					if (circuit.contains(blocker.blocker))
+					if (!reachedFrom.containsKey(blocker))
 					{
-						break;
+						reachedFrom.put(blocker, holder);
+						pending.add(blocker);
 					}
 				}
+			}
+			return LockState.OK;
+		}
+	}
 
-				victims.add(circuit.get(0));
-				circuit.clear();
+	private static LockState resolveCrossLock(LockTransactionContext waiter, LockTransactionContext lastInCycle,
+			Map<LockTransactionContext, LockTransactionContext> reachedFrom)
+	{
+		LockTransactionContext victim = waiter.orderedAcquisition ? null : waiter;
+		for (LockTransactionContext context = lastInCycle; context != null; context = reachedFrom.get(context))
+		{
+			if (!context.orderedAcquisition && ((victim == null) || (context.startTime - victim.startTime > 0L)))
+			{
+				victim = context;
 			}
-			while (!waitersByContext.isEmpty());
+		}
 
-			LockState result = LockState.OK;
-			Thread currentThread = Thread.currentThread();
-			for (WaitingThread victim : victims)
+		if (victim == null)
+		{
+			// not expected, since every session in the cycle has locked in order; the youngest still breaks it
+			victim = waiter;
+			for (LockTransactionContext context = lastInCycle; context != null; context = reachedFrom.get(context))
 			{
-				if (victim.context.thread == currentThread)
-				{
-					result = LockState.COLLISION;
-				}
-				else
+				if (context.startTime - victim.startTime > 0L)
 				{
-					victim.context.interrupted = true;
-					victim.context.thread.interrupt();
+					victim = context;
 				}
 			}
-			return result;
 		}
+		if (victim == waiter)
+		{
+			return LockState.COLLISION;
+		}
+		victim.chooseAsVictim();
+		return LockState.OK;
 	}
 }
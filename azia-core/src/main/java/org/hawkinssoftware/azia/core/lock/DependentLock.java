@@ -24,6 +24,9 @@ import org.hawkinssoftware.rns.core.role.DomainRole;
 class DependentLock extends UserInterfaceLock
 {
 	private final UserInterfaceLock owner;
+	// resolved on first use and kept: the owner chain is immutable, and re-parenting an actor assigns it a new lock
+	// instead. Threads racing to resolve it store the same lock, which is already published by the registry.
+	private AutonomousLock autonomousLock = null;
 
 	DependentLock(UserInterfaceLock owner, String description)
 	{
@@ -35,28 +38,17 @@ class DependentLock extends UserInterfaceLock
 	@Override
 	public AutonomousLock getAutonomousLock()
 	{
-		UserInterfaceLock lock = owner;
-		while (true)
+		AutonomousLock lock = autonomousLock;
+		if (lock == null)
 		{
-			if (lock == null)
+			if (owner == null)
 			{
 				throw new IllegalStateException("Dependent lock is associated to no autonomous lock!");
 			}
-
-			if (lock instanceof AutonomousLock)
-			{
-				break;
-			}
-
-			if (lock instanceof DependentLock)
-			{
-				lock = ((DependentLock) lock).owner;
-			}
-			else
-			{
-				throw new IllegalStateException("Unknown lock type " + lock.getClass().getName());
-			}
+			// the owner resolves and keeps its own chain, so this is a single step
+			lock = owner.getAutonomousLock();
+			autonomousLock = lock;
 		}
-		return (AutonomousLock) lock;
+		return lock;
 	}
 }
@@ -17,6 +17,7 @@ import org.hawkinssoftware.azia.core.action.UserInterfaceTask.CollisionStatus;
 import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
 import org.hawkinssoftware.azia.core.lock.AutonomousLock.RequestMode;
 import org.hawkinssoftware.azia.core.lock.AutonomousLock.Result;
+import org.hawkinssoftware.azia.core.lock.LockTransactionContext.Permission;
 import org.hawkinssoftware.azia.core.lock.UserInterfaceLockDomains.LockManagement;
 import org.hawkinssoftware.azia.core.log.AziaLogging.Tag;
 import org.hawkinssoftware.rns.core.lock.HookSemaphores;
@@ -82,9 +83,19 @@ class FieldAccessLockValidator implements ValidateWrite.Validator, ValidateRead.
 		}
 
 		LockTransactionContext context = LockTransactionContext.get();
-		context.checkInterrupted();
+		context.checkVictim();
+		if (context.delegatedPartitions != null)
+		{
+			validateDelegatedAccess(context, actor, "read", fieldOwner, fieldName);
+			return;
+		}
+		if (context.isPermitted(actor, Permission.READ))
+		{
+			return;
+		}
 		if (context.actorsInstantiatedThisTransaction.contains(actor))
 		{
+			context.permit(actor, Permission.WRITE);
 			return;
 		}
 
@@ -95,11 +106,7 @@ class FieldAccessLockValidator implements ValidateWrite.Validator, ValidateRead.
 							.getClass().getSimpleName(), fieldName);
 		}
 
-		UserInterfaceLock lock = null;
-		synchronized (LockRegistry.adminLock)
-		{
-			lock = LockRegistry.getInstance().locksByActor.get(actor);
-		}
+		UserInterfaceLock lock = LockRegistry.getInstance().getActorLock(actor);
 		if (lock == null)
 		{
 			Log.out(Tag.LOCK_WARNING, "Warining: attempt to validate read with an actor that has no registered lock: %s", fieldOwner.getClass().getName());
@@ -109,9 +116,32 @@ class FieldAccessLockValidator implements ValidateWrite.Validator, ValidateRead.
 		AutonomousLock physicalLock = lock.getAutonomousLock();
 		if (physicalLock.hasReadPermission())
 		{
+			context.permit(actor, Permission.READ);
 			return;
 		}
 
+		if (context.optimisticReads)
+		{
+			if (physicalLock.hasAssemblyPermission() || context.readStamps.containsKey(physicalLock))
+			{
+				context.permit(actor, Permission.READ);
+				return;
+			}
+			long stamp = physicalLock.readStamp();
+			if (stamp >= 0L)
+			{
+				context.readStamps.put(physicalLock, stamp);
+				context.permit(actor, Permission.READ);
+				return;
+			}
+			// another thread is committing these actors, so wait for the read lock as usual
+		}
+
+		if (!context.hasFullLock(physicalLock))
+		{
+			// a lock taken out of order may close a crosslock, so the session is no longer exempt from being its victim
+			context.orderedAcquisition = false;
+		}
 		if (physicalLock.readLock(RequestMode.IMMEDIATE) == Result.BUSY)
 		{
 			switch (context.setAwaitedLock(physicalLock))
@@ -131,6 +161,7 @@ class FieldAccessLockValidator implements ValidateWrite.Validator, ValidateRead.
 			}
 		}
 		context.addReadOnlyLock(physicalLock);
+		context.permit(actor, Permission.READ);
 	}
 
 	/**
@@ -159,26 +190,56 @@ class FieldAccessLockValidator implements ValidateWrite.Validator, ValidateRead.
 		}
 
 		LockTransactionContext context = LockTransactionContext.get();
-		context.checkInterrupted();
+		context.checkVictim();
+		if (context.delegatedPartitions != null)
+		{
+			validateDelegatedAccess(context, actor, "write", fieldOwner, fieldName);
+			return;
+		}
+		if (context.isPermitted(actor, Permission.WRITE))
+		{
+			return;
+		}
 		if (context.actorsInstantiatedThisTransaction.contains(actor))
 		{
+			context.permit(actor, Permission.WRITE);
 			return;
 		}
 
-		synchronized (LockRegistry.adminLock)
+		UserInterfaceLock lock = LockRegistry.getInstance().getActorLock(actor);
+		if (lock == null)
 		{
-			UserInterfaceLock lock = LockRegistry.getInstance().locksByActor.get(actor);
-			if (lock == null)
-			{
-				Log.out(Tag.LOCK_WARNING, "Warining: attempt to validate write with an actor that has no registered lock: %s");
-				return;
-			}
+			Log.out(Tag.LOCK_WARNING, "Warining: attempt to validate write with an actor that has no registered lock: %s");
+			return;
+		}
 
-			if (!lock.getAutonomousLock().hasWritePermission())
-			{
-				Log.out(Tag.LOCK_WARNING, "Warning: attempt to write %s.%s without permission from the actor lock.", fieldOwner.getClass().getSimpleName(),
-						fieldName);
-			}
+		if (lock.getAutonomousLock().hasWritePermission())
+		{
+			context.permit(actor, Permission.WRITE);
+		}
+		else
+		{
+			Log.out(Tag.LOCK_WARNING, "Warning: attempt to write %s.%s without permission from the actor lock.", fieldOwner.getClass().getSimpleName(),
+					fieldName);
+		}
+	}
+
+	/**
+	 * While a thread commits its share of a parallel commit, it may access only the actors of its own partitions, whose
+	 * commit locks are held by the delegating session, and any actors it instantiates meanwhile.
+	 */
+	private void validateDelegatedAccess(LockTransactionContext context, UserInterfaceActor actor, String access, Object fieldOwner, String fieldName)
+	{
+		if (context.actorsInstantiatedThisTransaction.contains(actor))
+		{
+			return;
+		}
+
+		UserInterfaceLock lock = LockRegistry.getInstance().getActorLock(actor);
+		if ((lock == null) || !context.delegatedPartitions.contains(lock.getAutonomousLock()))
+		{
+			Log.out(Tag.LOCK_WARNING, "Warning: attempt to %s %s.%s outside the partitions of a delegated commit.", access, fieldOwner.getClass()
+					.getSimpleName(), fieldName);
 		}
 	}
 }
@@ -14,12 +14,10 @@ import java.util.Map;
 import java.util.Set;
 
 import org.hawkinssoftware.azia.core.lock.UserInterfaceLockDomains.LockManagement;
-import org.hawkinssoftware.azia.core.lock.UserInterfaceLockDomains.ThreadStateValidation;
 import org.hawkinssoftware.rns.core.collection.CollectionAccessValidator;
 import org.hawkinssoftware.rns.core.lock.SemaphoreHook;
 import org.hawkinssoftware.rns.core.moa.ExecutionPath;
 import org.hawkinssoftware.rns.core.role.DomainRole;
-import org.hawkinssoftware.rns.core.role.TypeRole;
 
 /**
  * Validates access to the fields of the LockRegistry and supporting classes. It does not validate anything outside this
@@ -71,9 +69,35 @@ class LockAccessValidator implements SemaphoreHook
 		}
 	}
 
+	/**
+	 * Validates the concurrent form of the <code>LockRegistry.locksByActor</code>: reads are lock-free, but every write
+	 * must still be made under the admin lock.
+	 * 
+	 * @param <K>
+	 *            the key type
+	 * @param <V>
+	 *            the value type
+	 * @author Byron Hawkins
+	 */
+	@ExecutionPath.NoFrame
+	@DomainRole.Join(membership = LockManagement.class)
+	static class LockRegistryConcurrentMapValidator<K, V> extends LockRegistryMapValidator<K, V>
+	{
+		LockRegistryConcurrentMapValidator(String fieldName)
+		{
+			super(fieldName);
+		}
+
+		@Override
+		public void validateRead(Map<K, V> collection, String methodName, Object... args)
+		{
+		}
+	}
+
 	// enabled flag is recognized within the collection
 	/**
-	 * DOC comment task awaits.
+	 * Validates that the lock sets of a <code>LockTransactionContext</code> are only accessed by the thread which owns
+	 * the context. Other threads must refer to the holder edges registered by the owner on each lock.
 	 * 
 	 * @param <T>
 	 *            the generic type
@@ -83,29 +107,30 @@ class LockAccessValidator implements SemaphoreHook
 	@DomainRole.Join(membership = LockManagement.class)
 	static class LockTransactionContextSetValidator<T> implements CollectionAccessValidator<Set<T>>
 	{
+		private final LockTransactionContext owner;
 		private final String fieldName;
 
-		LockTransactionContextSetValidator(String fieldName)
+		LockTransactionContextSetValidator(LockTransactionContext owner, String fieldName)
 		{
+			this.owner = owner;
 			this.fieldName = fieldName;
 		}
 
 		@Override
 		public void validateRead(Set<T> collection, String methodName, Object... args)
 		{
-			TypeRole role = ExecutionPath.getReceiverRole();
-			if (role.hasRole(ThreadStateValidation.INSTANCE) && (getInstance().heldSemaphore != Semaphore.LOCK_TRANSACTION_CONTEXT))
+			if (owner.thread != Thread.currentThread())
 			{
-				throw new IllegalStateException("Attempt to " + fieldName + "." + methodName + "() from " + role + " without holding the lock.");
+				throw new IllegalStateException("Attempt to " + fieldName + "." + methodName + "() from a thread which does not own the context.");
 			}
 		}
 
 		@Override
 		public void validateWrite(Set<T> collection, String methodName, Object... args)
 		{
-			if (getInstance().heldSemaphore != Semaphore.LOCK_TRANSACTION_CONTEXT)
+			if (owner.thread != Thread.currentThread())
 			{
-				throw new IllegalStateException("Attempt to " + fieldName + "." + methodName + "() without holding the lock.");
+				throw new IllegalStateException("Attempt to " + fieldName + "." + methodName + "() from a thread which does not own the context.");
 			}
 		}
 	}
@@ -10,8 +10,15 @@
  */
 package org.hawkinssoftware.azia.core.lock;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.hawkinssoftware.azia.core.action.LayoutTransaction;
 import org.hawkinssoftware.azia.core.action.TransactionRegistry;
@@ -22,6 +29,7 @@ import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.Tran
 import org.hawkinssoftware.azia.core.layout.BoundedEntity;
 import org.hawkinssoftware.azia.core.lock.AutonomousLock.RequestMode;
 import org.hawkinssoftware.azia.core.lock.AutonomousLock.Result;
+import org.hawkinssoftware.azia.core.lock.LockTransactionContext.LockState;
 import org.hawkinssoftware.azia.core.lock.UserInterfaceLockDomains.LockManagement;
 import org.hawkinssoftware.rns.core.collection.AccessValidatingMap;
 import org.hawkinssoftware.rns.core.lock.HookSemaphores;
@@ -60,6 +68,85 @@ public class LockRegistry
 
 	private static final InstantiationStack INSTANTIATION_STACK = new InstantiationStack();
 
+	/**
+	 * The authority of a session thread, while it holds its commit locks, to have the directives on the actors of
+	 * those locks committed by other threads, one partition per lock. A thread committing a share of the partitions
+	 * may access the fields of their actors only; any other access is reported by the
+	 * <code>FieldAccessLockValidator</code>. The delegation is valid only until the session releases its commit
+	 * locks.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	@ExecutionPath.NoFrame
+	@DomainRole.Join(membership = { LockManagement.class, TransactionFacilitation.class })
+	public static final class CommitDelegation
+	{
+		private final LockTransactionContext delegator;
+		private final Set<AutonomousLock> commitLocks;
+
+		private CommitDelegation(LockTransactionContext delegator, Set<AutonomousLock> commitLocks)
+		{
+			this.delegator = delegator;
+			this.commitLocks = commitLocks;
+		}
+
+		/**
+		 * Must be called by the delegating session thread.
+		 * 
+		 * @return an identifier of the commit lock under which a directive on <code>actor</code> is committed, or null
+		 *         if the directive cannot be delegated, because the lock of <code>actor</code> is being established by
+		 *         the session or is not held by it
+		 */
+		public Object getPartition(UserInterfaceActor actor)
+		{
+			if (LockTransactionContext.get() != delegator)
+			{
+				throw new IllegalStateException("Attempt to partition a delegated commit on thread " + Thread.currentThread().getName()
+						+ ", which does not hold its commit locks.");
+			}
+			if (delegator.adjustingLocksByActor.containsKey(actor) || delegator.actorsInstantiatedThisTransaction.contains(actor))
+			{
+				return null;
+			}
+
+			UserInterfaceLock lock = getInstance().getActorLock(actor);
+			if ((lock == null) || !commitLocks.contains(lock.getAutonomousLock()))
+			{
+				return null;
+			}
+			return lock.getAutonomousLock();
+		}
+
+		/**
+		 * Confine the field access of the current thread to the actors of <code>partitions</code>, each of which was
+		 * returned by <code>getPartition()</code>, until <code>end()</code>.
+		 */
+		public void begin(Collection<?> partitions)
+		{
+			Set<AutonomousLock> share = new HashSet<AutonomousLock>();
+			for (Object partition : partitions)
+			{
+				if (!commitLocks.contains(partition) || !((AutonomousLock) partition).isCommitLocked())
+				{
+					throw new IllegalStateException("Attempt to commit a partition whose lock is not held by the delegating session: " + partition);
+				}
+				share.add((AutonomousLock) partition);
+			}
+
+			LockTransactionContext context = LockTransactionContext.get();
+			if (context.delegatedPartitions != null)
+			{
+				throw new IllegalStateException("Attempt to begin a delegated commit within another on thread " + Thread.currentThread().getName());
+			}
+			context.delegatedPartitions = share;
+		}
+
+		public void end()
+		{
+			LockTransactionContext.get().delegatedPartitions = null;
+		}
+	}
+
 	// use `new String` to avoid intern collision on the monitor
 	static Object adminLock = new String("LockRegistry's Admin Lock");
 
@@ -77,18 +164,84 @@ public class LockRegistry
 		return INSTANCE;
 	}
 
-	// synchronized under `adminLock
-	final Map<UserInterfaceActor, UserInterfaceLock> locksByActor = AccessValidatingMap.create(new HashMap<UserInterfaceActor, UserInterfaceLock>(),
-			new LockAccessValidator.LockRegistryMapValidator<UserInterfaceActor, UserInterfaceLock>("locksByActor"));
+	/**
+	 * Debug mode for the actor lock lookup: when the system property is set, every read of `locksByActor is made under
+	 * `adminLock and validated as strictly as the writes. By default the map is concurrent and reads take no lock.
+	 */
+	static final boolean SYNCHRONIZED_LOOKUP = System.getProperty("synchronized-lock-registry") != null;
+
+	/**
+	 * Number of times a task may be failed by stale optimistic reads before its attempts read under lock.
+	 */
+	private static final int MAXIMUM_STALE_READS = 2;
+
+	// written under `adminLock; read without lock unless SYNCHRONIZED_LOOKUP
+	final Map<UserInterfaceActor, UserInterfaceLock> locksByActor = createActorLockMap();
 
 	// synchronized under `adminLock
 	final Map<BoundedEntity.LayoutRoot, UserInterfaceLock> locksByLayoutRoot = AccessValidatingMap.create(
 			new HashMap<BoundedEntity.LayoutRoot, UserInterfaceLock>(),
 			new LockAccessValidator.LockRegistryMapValidator<BoundedEntity.LayoutRoot, UserInterfaceLock>("locksByLayoutRoot"));
 
-	public void beginSession()
+	private static Map<UserInterfaceActor, UserInterfaceLock> createActorLockMap()
+	{
+		if (SYNCHRONIZED_LOOKUP)
+		{
+			return AccessValidatingMap.create(new HashMap<UserInterfaceActor, UserInterfaceLock>(),
+					new LockAccessValidator.LockRegistryMapValidator<UserInterfaceActor, UserInterfaceLock>("locksByActor"));
+		}
+		else
+		{
+			return AccessValidatingMap.create(new ConcurrentHashMap<UserInterfaceActor, UserInterfaceLock>(),
+					new LockAccessValidator.LockRegistryConcurrentMapValidator<UserInterfaceActor, UserInterfaceLock>("locksByActor"));
+		}
+	}
+
+	UserInterfaceLock getActorLock(UserInterfaceActor actor)
+	{
+		if (SYNCHRONIZED_LOOKUP)
+		{
+			synchronized (adminLock)
+			{
+				return locksByActor.get(actor);
+			}
+		}
+		return locksByActor.get(actor);
+	}
+
+	/**
+	 * @param startTime
+	 *            <code>System.nanoTime()</code> at which the first attempt of the session's task began; the youngest
+	 *            task in a crosslock is the one to yield
+	 * @param lockWaitLimit
+	 *            nanoseconds for which the session may wait for any one lock, or 0 to adapt the bound to the typical
+	 *            hold time of each lock
+	 */
+	public void beginSession(long startTime, long lockWaitLimit)
+	{
+		LockTransactionContext.get().beginSession(startTime, lockWaitLimit);
+	}
+
+	public void releaseCurrentThread()
+	{
+		LockTransactionContext.PerThread.release();
+		INSTANTIATION_STACK.remove();
+	}
+
+	public int getLiveContextCount()
 	{
-		LockTransactionContext.get().beginSession();
+		return LockTransactionContext.PerThread.getLiveCount();
+	}
+
+	/**
+	 * Gauge of the actors currently registered with a lock.
+	 */
+	public int getActorLockCount()
+	{
+		synchronized (adminLock)
+		{
+			return locksByActor.size();
+		}
 	}
 
 	public void registerActor(UserInterfaceActor actor, boolean isHandler)
@@ -101,7 +254,7 @@ public class LockRegistry
 		}
 
 		LockTransactionContext context = LockTransactionContext.get();
-		context.checkInterrupted();
+		context.checkVictim();
 		if (!context.isTransactionActive())
 		{
 			throw new IllegalStateException(
@@ -125,7 +278,7 @@ public class LockRegistry
 	public void registerLayoutActor(UserInterfaceActor actor, LayoutTransaction transaction)
 	{
 		LockTransactionContext context = LockTransactionContext.get();
-		context.checkInterrupted();
+		context.checkVictim();
 		if (context.layoutRootLocksByTransaction.get(transaction) == null)
 		{
 			if (actor instanceof BoundedEntity.LayoutRoot)
@@ -154,10 +307,7 @@ public class LockRegistry
 
 	public void beginSubordinateInstantiation(UserInterfaceActor actor)
 	{
-		synchronized (adminLock)
-		{
-			INSTANTIATION_STACK.get().push(locksByActor.get(actor));
-		}
+		INSTANTIATION_STACK.get().push(getActorLock(actor));
 	}
 
 	public void endInstantiation()
@@ -168,7 +318,7 @@ public class LockRegistry
 	public void beginTransaction(UserInterfaceTransaction transaction)
 	{
 		LockTransactionContext context = LockTransactionContext.get();
-		context.checkInterrupted();
+		context.checkVictim();
 		context.setTransactionActive(true);
 
 		// System.out.println("Begin " + transaction.getClass().getSimpleName());
@@ -182,7 +332,7 @@ public class LockRegistry
 	public void beginLayoutTransaction(LayoutTransaction transaction, BoundedEntity.LayoutRoot root)
 	{
 		LockTransactionContext context = LockTransactionContext.get();
-		context.checkInterrupted();
+		context.checkVictim();
 		context.setTransactionActive(true);
 
 		// System.out.println("Begin assembly of layout change");
@@ -221,16 +371,21 @@ public class LockRegistry
 	{
 		AutonomousLock lock;
 		LockTransactionContext context = LockTransactionContext.get();
-		context.checkInterrupted();
-		synchronized (adminLock)
-		{
-			lock = locksByActor.get(actor).getAutonomousLock();
-		}
+		context.checkVictim();
+		lock = getActorLock(actor).getAutonomousLock();
 		if (context.hasFullLock(lock))
 		{
 			return;
 		}
 
+		assemblyLockLazily(context, lock);
+	}
+
+	private void assemblyLockLazily(LockTransactionContext context, AutonomousLock lock)
+	{
+		// a lock taken out of order may close a crosslock, so the session is no longer exempt from being its victim
+		context.orderedAcquisition = false;
+
 		// TODO: is it safe to modularize by lock method, maybe make it another enum?
 		if (lock.assemblyLock(RequestMode.IMMEDIATE) == Result.BUSY)
 		{
@@ -253,6 +408,95 @@ public class LockRegistry
 		context.addFullLock(lock);
 	}
 
+	/**
+	 * Acquire the assembly locks of all <code>actors</code> in the global <code>UserInterfaceLock.INDEX_ORDER</code>,
+	 * waiting as long as necessary for each. When this is called before any other lock is taken in the session, the
+	 * ordered locks can never form a crosslock among themselves, and the session is not chosen as the victim of a
+	 * crosslock, through its commit, for as long as it takes no lock outside the declared ones, unless every session
+	 * in the cycle is exempt (which is not expected). Its first lazily taken lock ends the exemption. When the session
+	 * already holds a lock, the actors are locked lazily, in order.
+	 */
+	public void lockForAssembly(Collection<? extends UserInterfaceActor> actors)
+	{
+		LockTransactionContext context = LockTransactionContext.get();
+		context.checkVictim();
+
+		Set<AutonomousLock> distinctLocks = new HashSet<AutonomousLock>();
+		for (UserInterfaceActor actor : actors)
+		{
+			UserInterfaceLock lock = getActorLock(actor);
+			if (lock == null)
+			{
+				throw new IllegalArgumentException("Attempt to lock an actor which has no registered lock: " + actor);
+			}
+			distinctLocks.add(lock.getAutonomousLock());
+		}
+		List<AutonomousLock> orderedLocks = new ArrayList<AutonomousLock>(distinctLocks);
+		Collections.sort(orderedLocks, UserInterfaceLock.INDEX_ORDER);
+
+		if (!context.getFullLocks().isEmpty() || !context.getReadOnlyLocks().isEmpty())
+		{
+			for (AutonomousLock lock : orderedLocks)
+			{
+				if (!context.hasFullLock(lock))
+				{
+					assemblyLockLazily(context, lock);
+				}
+			}
+			return;
+		}
+
+		// cleared with the session's locks, or by the first lock taken lazily
+		context.orderedAcquisition = true;
+		for (AutonomousLock lock : orderedLocks)
+		{
+			if (lock.assemblyLock(RequestMode.IMMEDIATE) == Result.BUSY)
+			{
+				// the validator prefers a lazy waiter as the victim, but falls back to this one if the whole cycle is
+				// ordered
+				if (context.setAwaitedLock(lock) == LockState.COLLISION)
+				{
+					TransactionRegistry.failCurrentTask(CollisionStatus.CROSSLOCK);
+				}
+				awaitOrderedLock(lock);
+				context.clearAwaitedLock();
+			}
+			context.addFullLock(lock);
+		}
+	}
+
+	private void awaitOrderedLock(AutonomousLock lock)
+	{
+		while (true)
+		{
+			switch (lock.assemblyLock(RequestMode.WAIT))
+			{
+				case SUCCESS:
+					return;
+				case INTERRUPTED:
+					// chosen as the victim by the CrossLockValidator's fallback, when a later wait closed an ordered cycle
+					TransactionRegistry.failCurrentTask(CollisionStatus.CROSSLOCK);
+				case TIMEOUT:
+					// any crosslock through this wait is broken by its victim, which is this thread if it is chosen, so
+					// the lock will eventually be released
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Read the actors of the current session optimistically: a read takes no lock, and instead records the version of
+	 * the actor's lock, which <code>commitLock()</code> validates. When another session has committed any of those
+	 * actors in the meantime, the task is failed with <code>CollisionStatus.STALE_READ</code> and retried. A task which
+	 * has been failed this way <code>MAXIMUM_STALE_READS</code> times reads under lock on its next attempt, so that a
+	 * long reader cannot be starved by frequent commits.
+	 */
+	public void beginOptimisticReads()
+	{
+		LockTransactionContext context = LockTransactionContext.get();
+		context.optimisticReads = (context.staleReadCount < MAXIMUM_STALE_READS);
+	}
+
 	public void commitLock()
 	{
 		// System.out.println("Commit lock on thread " + Thread.currentThread().getName());
@@ -260,7 +504,7 @@ public class LockRegistry
 		LockTransactionContext context = LockTransactionContext.get();
 		for (AutonomousLock lock : context.getFullLocks())
 		{
-			context.checkInterrupted();
+			context.checkVictim();
 			if (lock.commitLock(RequestMode.IMMEDIATE) == Result.BUSY)
 			{
 				switch (context.setAwaitedLock(lock))
@@ -280,6 +524,38 @@ public class LockRegistry
 				}
 			}
 		}
+
+		// with the commit locks held, no actor this session will write can change before it commits
+		if (!context.validateReadStamps())
+		{
+			context.staleReadCount++;
+			TransactionRegistry.failCurrentTask(CollisionStatus.STALE_READ);
+		}
+	}
+
+	/**
+	 * Obtain the authority to have the directives of the current session committed in partitions by other threads.
+	 * The session must hold its commit locks, and must not release them until every partition is committed.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the current thread does not hold the commit locks of a session
+	 */
+	public CommitDelegation delegateCommit()
+	{
+		LockTransactionContext context = LockTransactionContext.get();
+		Set<AutonomousLock> commitLocks = context.getFullLocks();
+		if (!context.isTransactionActive())
+		{
+			throw new IllegalStateException("Attempt to delegate a commit with no session committing on thread " + Thread.currentThread().getName());
+		}
+		for (AutonomousLock lock : commitLocks)
+		{
+			if (!lock.hasWritePermission())
+			{
+				throw new IllegalStateException("Attempt to delegate a commit without holding the commit lock " + lock);
+			}
+		}
+		return new CommitDelegation(context, commitLocks);
 	}
 
 	public void commitUnlock()
@@ -287,23 +563,26 @@ public class LockRegistry
 		// System.out.println("Commit unlock on thread " + Thread.currentThread().getName());
 
 		LockTransactionContext context = LockTransactionContext.get();
-		synchronized (LockTransactionContext.class)
+		for (AutonomousLock lock : context.getFullLocks())
 		{
-			for (AutonomousLock lock : context.getFullLocks())
-			{
-				lock.commitUnlock();
-			}
-			for (AutonomousLock lock : context.getReadOnlyLocks())
-			{
-				lock.clearReadLocks();
-			}
-			context.clearLocks();
-			context.setTransactionActive(false);
+			lock.commitUnlock();
 		}
+		for (AutonomousLock lock : context.getReadOnlyLocks())
+		{
+			lock.clearReadLocks();
+		}
+		context.clearLocks();
+		context.setTransactionActive(false);
 
-		synchronized (adminLock)
+		// a re-parented actor is assigned a new lock, so no resolved AutonomousLock needs to be invalidated here, but
+		// any permission cached against its former lock must be
+		if (!context.adjustingLocksByActor.isEmpty())
 		{
-			locksByActor.putAll(context.adjustingLocksByActor);
+			synchronized (adminLock)
+			{
+				locksByActor.putAll(context.adjustingLocksByActor);
+				LockTransactionContext.revokeCachedPermissions();
+			}
 		}
 		context.layoutRootLocksByTransaction.clear();
 		context.adjustingLocksByActor.clear();
@@ -313,12 +592,9 @@ public class LockRegistry
 	public void emergencyReleaseContext()
 	{
 		LockTransactionContext context = LockTransactionContext.get();
-		synchronized (LockTransactionContext.class)
+		for (AutonomousLock lock : context.emergencyClearAllLocks())
 		{
-			for (AutonomousLock lock : context.emergencyClearAllLocks())
-			{
-				lock.emergencyReleaseAllLock();
-			}
+			lock.emergencyReleaseAllLock();
 		}
 
 		context.layoutRootLocksByTransaction.clear();
@@ -10,13 +10,18 @@
  */
 package org.hawkinssoftware.azia.core.lock;
 
-import java.util.ArrayList;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
 
 import org.hawkinssoftware.azia.core.action.LayoutTransaction;
 import org.hawkinssoftware.azia.core.action.TransactionRegistry;
@@ -32,7 +37,12 @@ import org.hawkinssoftware.rns.core.validation.ValidateRead;
 import org.hawkinssoftware.rns.core.validation.ValidateWrite;
 
 /**
- * DOC comment task awaits.
+ * Bookkeeping of the actor locks held by the transaction on one thread. Everything here is confined to the owning
+ * thread, except for the <code>awaitedLock</code>, which the owner publishes under
+ * <code>LockTransactionContext.class</code> while it waits for a lock, and the holder edges it registers on each
+ * <code>AutonomousLock</code> it takes. Together these form the wait-for graph walked by the
+ * <code>CrossLockValidator</code>, so the owner's own bookkeeping is never contended, and only threads which are
+ * actually waiting coordinate with each other.
  * 
  * @author Byron Hawkins
  */
@@ -53,10 +63,33 @@ class LockTransactionContext
 		COLLISION;
 	}
 
+	/**
+	 * Level of field access granted to the current session on an actor. Each level includes the ones before it.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	enum Permission
+	{
+		READ,
+		WRITE;
+	}
+
+	// written under LockRegistry.adminLock when an actor is assigned a different lock, which revokes every permission
+	// cached against its former lock; read by each owner before it trusts its cache
+	private static volatile int permissionEpoch = 0;
+
+	static void revokeCachedPermissions()
+	{
+		permissionEpoch++;
+	}
+
 	// this class wrapper isolates the contexts per thread and their access from the @HookSemaphores instrumentation of
 	// the containing class
 	/**
-	 * DOC comment task awaits.
+	 * Registry of the live contexts. A context is only weakly registered, so it is retired with its thread, or
+	 * explicitly by <code>release()</code> when the thread will execute no further transactions. Contexts pinned past
+	 * the end of their thread are swept whenever the registry has doubled in size since the last sweep. The registry
+	 * takes no monitor, so that registering the many short-lived contexts of virtual threads never blocks a carrier.
 	 * 
 	 * @author Byron Hawkins
 	 */
@@ -64,40 +97,94 @@ class LockTransactionContext
 	@DomainRole.Join(membership = LockManagement.class)
 	static class PerThread
 	{
-		static ThreadLocal<LockTransactionContext> CONTEXTS = new ThreadLocal<LockTransactionContext>() {
-			@Override
-			protected LockTransactionContext initialValue()
+		private static final int MINIMUM_SWEEP_THRESHOLD = 64;
+
+		static final ThreadLocal<LockTransactionContext> CONTEXTS = new ThreadLocal<LockTransactionContext>();
+
+		static final Map<Reference<LockTransactionContext>, Boolean> ALL = new ConcurrentHashMap<Reference<LockTransactionContext>, Boolean>();
+		private static final ReferenceQueue<LockTransactionContext> RETIRED = new ReferenceQueue<LockTransactionContext>();
+
+		// racy by design: a missed or redundant sweep is harmless
+		private static volatile int sweepThreshold = MINIMUM_SWEEP_THRESHOLD;
+
+		static LockTransactionContext register()
+		{
+			LockTransactionContext newContext = new LockTransactionContext();
+			newContext.registration = new WeakReference<LockTransactionContext>(newContext, RETIRED);
+			CONTEXTS.set(newContext);
+			ALL.put(newContext.registration, Boolean.TRUE);
+
+			expungeRetired();
+			if (ALL.size() >= sweepThreshold)
 			{
-				LockTransactionContext newContext = new LockTransactionContext();
-				synchronized (ALL)
-				{
-					ALL.add(newContext);
-				}
-				return newContext;
+				sweep();
+				sweepThreshold = Math.max(MINIMUM_SWEEP_THRESHOLD, ALL.size() * 2);
 			}
-		};
+			return newContext;
+		}
 
-		// locked under itself
-		static final List<LockTransactionContext> ALL = new ArrayList<LockTransactionContext>();
+		static void release()
+		{
+			LockTransactionContext context = CONTEXTS.get();
+			if (context == null)
+			{
+				return;
+			}
+			if (context.transactionActive)
+			{
+				throw new IllegalStateException("Attempt to release the lock context of thread " + context.thread.getName()
+						+ " during a transaction.");
+			}
 
-		static Collection<LockTransactionContext> getAll()
+			CONTEXTS.remove();
+			ALL.remove(context.registration);
+			context.registration.clear();
+		}
+
+		private static void expungeRetired()
 		{
-			List<LockTransactionContext> all = new ArrayList<LockTransactionContext>();
-			synchronized (ALL)
+			Reference<? extends LockTransactionContext> retired;
+			while ((retired = RETIRED.poll()) != null)
 			{
-				all.addAll(ALL);
+				ALL.remove(retired);
 			}
-			return all;
+		}
+
+		private static void sweep()
+		{
+			expungeRetired();
+			for (Iterator<Reference<LockTransactionContext>> i = ALL.keySet().iterator(); i.hasNext();)
+			{
+				LockTransactionContext context = i.next().get();
+				if ((context == null) || !context.thread.isAlive())
+				{
+					i.remove();
+				}
+			}
+		}
+
+		static int getLiveCount()
+		{
+			sweep();
+			return ALL.size();
 		}
 	}
 
 	static LockTransactionContext get()
 	{
-		return PerThread.CONTEXTS.get();
+		LockTransactionContext context = PerThread.CONTEXTS.get();
+		if (context == null)
+		{
+			context = PerThread.register();
+		}
+		return context;
 	}
 
 	final Thread thread;
 
+	// assigned by PerThread.register(), which alone retires it
+	private Reference<LockTransactionContext> registration;
+
 	// not under lock contention
 	final Map<LayoutTransaction, UserInterfaceLock> layoutRootLocksByTransaction = new HashMap<LayoutTransaction, UserInterfaceLock>();
 	// this exists for the case of moving a layout entity under a different root--not sure it's necessary (could
@@ -106,35 +193,56 @@ class LockTransactionContext
 
 	final Set<UserInterfaceActor> actorsInstantiatedThisTransaction = new HashSet<UserInterfaceActor>();
 
-	/**
-	 * locked under LockTransactionContext.class with special conditions:
-	 * 
-	 * <pre>
-	 * 1. The owner may read without lock, because the owner is the only writer, and ownership is per thread
-	 * 2. The owner must lock before writing
-	 * 3. The checkCrossLock() method must lock before reading, because it operates on all contexts at once
-	 * </pre>
-	 */
+	// confined to the owner thread: the field access already granted to each actor, as of the `permissionEpoch, so that
+	// repeated validation of the same actor is a single probe; cleared with the locks which grant the access
+	private final Map<UserInterfaceActor, Permission> permittedActors = new IdentityHashMap<UserInterfaceActor, Permission>();
+	private int permittedEpoch = 0;
+
+	// confined to the owner thread; other threads see these locks only through the holder edges of each lock
 	final Set<AutonomousLock> readOnlyLocks = AccessValidatingSet.create(new HashSet<AutonomousLock>(),
-			new LockAccessValidator.LockTransactionContextSetValidator<AutonomousLock>("readOnlyLocks"));
+			new LockAccessValidator.LockTransactionContextSetValidator<AutonomousLock>(this, "readOnlyLocks"));
 	// ditto
 	final Set<AutonomousLock> fullLocks = AccessValidatingSet.create(new HashSet<AutonomousLock>(),
-			new LockAccessValidator.LockTransactionContextSetValidator<AutonomousLock>("fullLocks"));
+			new LockAccessValidator.LockTransactionContextSetValidator<AutonomousLock>(this, "fullLocks"));
 
-	// locked under LockTransactionContext.class
+	// confined to the owner thread
+	boolean transactionActive = false;
+
+	// confined to the owner thread: the lock wait limit of the current session in nanoseconds, or 0 for adaptive
+	private long waitLimit = 0L;
+
+	// locked under LockTransactionContext.class: published by the owner, read by the CrossLockValidator
 	@ValidateWrite(validatorType = LockAccessValidator.FieldAccessValidator.class, method = "validateLockTransactionContextFieldWrite")
 	@ValidateRead(validatorType = LockAccessValidator.FieldAccessValidator.class, method = "validateLockTransactionContextFieldRead")
 	AutonomousLock awaitedLock = null;
 
-	// locked under LockTransactionContext.class
-	@ValidateWrite(validatorType = LockAccessValidator.FieldAccessValidator.class, method = "validateLockTransactionContextFieldWrite")
-	@ValidateRead(validatorType = LockAccessValidator.FieldAccessValidator.class, method = "validateLockTransactionContextFieldRead")
-	boolean transactionActive = false;
+	// written by the owner before it publishes an awaited lock, read by the CrossLockValidator under
+	// LockTransactionContext.class: a session which has acquired its declared locks in INDEX_ORDER, and taken no other
+	// lock since, is never chosen as a crosslock victim until its locks are cleared
+	boolean orderedAcquisition = false;
 
-	// locked under LockTransactionContext.class (misread is possible but not a problem)
-	@ValidateWrite(validatorType = LockAccessValidator.FieldAccessValidator.class, method = "validateLockTransactionContextFieldWrite")
-	@ValidateRead(validatorType = LockAccessValidator.FieldAccessValidator.class, method = "validateLockTransactionContextFieldRead")
-	volatile boolean interrupted = false;
+	// ditto: the System.nanoTime() of the first attempt of the current task, kept through its retries, so that a
+	// task which has been failed often enough becomes the oldest in any crosslock and is no longer chosen as victim
+	long startTime = 0L;
+
+	// set under LockTransactionContext.class by the CrossLockValidator when it chooses this thread as the victim of a
+	// crosslock closed by another thread; the owner checks it before each lock wait, and at each step of the lock
+	// bookkeeping, and a wait already in progress is woken to abandon it
+	volatile boolean victim = false;
+
+	// written by the owner around each lock wait: whether it may be parked, so that only a waiting victim is unparked
+	private volatile boolean awaiting = false;
+
+	// confined to the owner thread: while optimistic reads are enabled, the stamp of each lock whose actors were read
+	// without locking, validated when the session commits
+	boolean optimisticReads = false;
+	final Map<AutonomousLock, Long> readStamps = new HashMap<AutonomousLock, Long>();
+	// ditto: attempts of the current task which were failed by a stale read
+	int staleReadCount = 0;
+
+	// owner only: while this thread commits its share of a parallel commit, the commit locks of the partitions in its
+	// share, held by the session thread which delegated them; its field access is confined to their actors
+	Set<AutonomousLock> delegatedPartitions = null;
 
 	final LockAccessValidator semaphoreAccessValidator = new LockAccessValidator(this);
 
@@ -143,143 +251,217 @@ class LockTransactionContext
 		this.thread = Thread.currentThread();
 	}
 
-	private void safeCheckInterrupted()
+	void checkVictim()
 	{
-		if (interrupted)
+		if (victim)
 		{
+			victim = false;
 			TransactionRegistry.failCurrentTask(CollisionStatus.CROSSLOCK);
 		}
 	}
 
-	void checkInterrupted()
+	/**
+	 * Choose this thread as the victim of a crosslock, and wake its lock wait if it is already parked. Called by the
+	 * <code>CrossLockValidator</code> under <code>LockTransactionContext.class</code>. The wait is woken with
+	 * <code>LockSupport.unpark()</code>, never by an interrupt, which belongs to the application.
+	 */
+	void chooseAsVictim()
 	{
-		synchronized (LockTransactionContext.class)
+		victim = true;
+		// the owner sets `awaiting before it checks `victim, so either it sees the flag or it is unparked here
+		if (awaiting)
 		{
-			safeCheckInterrupted();
+			LockSupport.unpark(thread);
 		}
 	}
 
-	void beginSession()
+	/**
+	 * Mark the owner as waiting for a lock, so that it is unparked if it becomes the victim of a crosslock. The owner
+	 * checks <code>victim</code> after this call, before each park.
+	 */
+	void beginAwait()
 	{
-		synchronized (LockTransactionContext.class)
+		awaiting = true;
+	}
+
+	void endAwait()
+	{
+		awaiting = false;
+	}
+
+	void beginSession(long startTime, long waitLimit)
+	{
+		if (startTime != this.startTime)
 		{
-			interrupted = false;
-			awaitedLock = null;
+			// a new task, not a retry
+			staleReadCount = 0;
 		}
+		this.startTime = startTime;
+		this.waitLimit = waitLimit;
+		victim = false;
+	}
+
+	long getWaitLimit()
+	{
+		return waitLimit;
 	}
 
 	void addReadOnlyLock(AutonomousLock lock)
 	{
-		synchronized (LockTransactionContext.class)
+		checkVictim();
+		if (readOnlyLocks.add(lock))
 		{
-			safeCheckInterrupted();
-			readOnlyLocks.add(lock);
+			lock.addReadHolder(this);
 		}
 	}
 
 	Set<AutonomousLock> getReadOnlyLocks()
 	{
-		synchronized (LockTransactionContext.class)
-		{
-			safeCheckInterrupted();
-			return readOnlyLocks;
-		}
+		checkVictim();
+		return readOnlyLocks;
 	}
 
 	void addFullLock(AutonomousLock lock)
 	{
-		synchronized (LockTransactionContext.class)
+		checkVictim();
+		if (fullLocks.add(lock))
 		{
-			safeCheckInterrupted();
-			fullLocks.add(lock);
+			lock.addFullHolder(this);
 		}
 	}
 
 	Set<AutonomousLock> getFullLocks()
 	{
-		synchronized (LockTransactionContext.class)
-		{
-			safeCheckInterrupted();
-			return new HashSet<AutonomousLock>(fullLocks);
-		}
+		checkVictim();
+		return new HashSet<AutonomousLock>(fullLocks);
 	}
 
 	boolean hasFullLock(AutonomousLock lock)
 	{
-		synchronized (LockTransactionContext.class)
-		{
-			safeCheckInterrupted();
-			return fullLocks.contains(lock);
-		}
+		checkVictim();
+		return fullLocks.contains(lock);
 	}
 
 	void clearLocks()
 	{
-		synchronized (LockTransactionContext.class)
+		checkVictim();
+		removeHolderEdges();
+		readOnlyLocks.clear();
+		fullLocks.clear();
+		clearReadStamps();
+		permittedActors.clear();
+		orderedAcquisition = false;
+	}
+
+	/**
+	 * @return true if the current session has already been granted <code>level</code> of access to the fields of
+	 *         <code>actor</code>
+	 */
+	boolean isPermitted(UserInterfaceActor actor, Permission level)
+	{
+		int epoch = permissionEpoch;
+		if (permittedEpoch != epoch)
 		{
-			safeCheckInterrupted();
-			readOnlyLocks.clear();
-			fullLocks.clear();
+			// a permission found after this point was resolved against the current lock assignments
+			permittedActors.clear();
+			permittedEpoch = epoch;
+			return false;
 		}
+		Permission granted = permittedActors.get(actor);
+		return (granted != null) && (granted.compareTo(level) >= 0);
 	}
 
-	Collection<AutonomousLock> emergencyClearAllLocks()
+	/**
+	 * Record that the current session holds <code>level</code> of access to the fields of <code>actor</code> until
+	 * its locks are cleared. Must follow a call to <code>isPermitted()</code> for the same access.
+	 */
+	void permit(UserInterfaceActor actor, Permission level)
 	{
-		synchronized (LockTransactionContext.class)
+		Permission granted = permittedActors.get(actor);
+		if ((granted == null) || (granted.compareTo(level) < 0))
 		{
-			Set<AutonomousLock> locks = new HashSet<AutonomousLock>();
-			locks.addAll(fullLocks);
-			locks.addAll(readOnlyLocks);
-			fullLocks.clear();
-			readOnlyLocks.clear();
-			transactionActive = false;
-			return locks;
+			permittedActors.put(actor, level);
 		}
 	}
 
-	boolean isTransactionActive()
+	boolean validateReadStamps()
 	{
-		synchronized (LockTransactionContext.class)
+		for (Map.Entry<AutonomousLock, Long> entry : readStamps.entrySet())
 		{
-			safeCheckInterrupted();
-			return transactionActive;
+			if (!entry.getKey().validateStamp(entry.getValue()))
+			{
+				return false;
+			}
 		}
+		return true;
 	}
 
-	void setTransactionActive(boolean transactionActive)
+	private void clearReadStamps()
 	{
-		synchronized (LockTransactionContext.class)
+		readStamps.clear();
+		optimisticReads = false;
+	}
+
+	private void removeHolderEdges()
+	{
+		for (AutonomousLock lock : fullLocks)
 		{
-			safeCheckInterrupted();
-			this.transactionActive = transactionActive;
+			lock.removeFullHolder(this);
+		}
+		for (AutonomousLock lock : readOnlyLocks)
+		{
+			lock.removeReadHolder(this);
 		}
 	}
 
-	boolean isWaiting()
+	Collection<AutonomousLock> emergencyClearAllLocks()
 	{
 		synchronized (LockTransactionContext.class)
 		{
-			safeCheckInterrupted();
-			return awaitedLock != null;
+			awaitedLock = null;
 		}
+		removeHolderEdges();
+
+		Set<AutonomousLock> locks = new HashSet<AutonomousLock>();
+		locks.addAll(fullLocks);
+		locks.addAll(readOnlyLocks);
+		fullLocks.clear();
+		readOnlyLocks.clear();
+		clearReadStamps();
+		permittedActors.clear();
+		orderedAcquisition = false;
+		transactionActive = false;
+		return locks;
+	}
+
+	boolean isTransactionActive()
+	{
+		checkVictim();
+		return transactionActive;
+	}
+
+	void setTransactionActive(boolean transactionActive)
+	{
+		checkVictim();
+		this.transactionActive = transactionActive;
 	}
 
 	LockState setAwaitedLock(AutonomousLock awaitedLock)
 	{
+		checkVictim();
 		synchronized (LockTransactionContext.class)
 		{
-			safeCheckInterrupted();
 			this.awaitedLock = awaitedLock;
-			return CrossLockValidator.checkCrossLock(awaitedLock);
+			return CrossLockValidator.checkCrossLock(this, awaitedLock);
 		}
 	}
 
 	void clearAwaitedLock()
 	{
+		checkVictim();
 		synchronized (LockTransactionContext.class)
 		{
-			safeCheckInterrupted();
-			this.awaitedLock = null;
+			awaitedLock = null;
 		}
 	}
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.lock;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning a wait for an <code>AutonomousLock</code> which was not immediately available. The
+ * fields are only assigned when the event will be committed, so a disabled event costs next to nothing.
+ * 
+ * @author Byron Hawkins
+ */
+@Name("org.hawkinssoftware.azia.LockWait")
+@Label("Lock Wait")
+@Category({ "Azia", "Lock" })
+@Description("A transaction thread waited for the lock of an actor")
+class LockWaitEvent extends Event
+{
+	@Label("Lock")
+	String lock;
+
+	@Label("Level")
+	@Description("READ, ASSEMBLY or COMMIT")
+	String level;
+
+	@Label("Holder")
+	@Description("A thread holding the lock when the wait began, if any")
+	Thread holder;
+
+	@Label("Outcome")
+	@Description("SUCCESS, INTERRUPTED or TIMEOUT")
+	String outcome;
+}
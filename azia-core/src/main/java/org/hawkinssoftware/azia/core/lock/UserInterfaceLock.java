@@ -10,6 +10,7 @@
  */
 package org.hawkinssoftware.azia.core.lock;
 
+import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hawkinssoftware.azia.core.lock.UserInterfaceLockDomains.LockManagement;
@@ -27,6 +28,17 @@ abstract class UserInterfaceLock
 {
 	private static final AtomicInteger INDEX = new AtomicInteger();
 
+	/**
+	 * Global acquisition order of the locks: threads which take their locks in this order can never crosslock each other.
+	 */
+	static final Comparator<UserInterfaceLock> INDEX_ORDER = new Comparator<UserInterfaceLock>() {
+		@Override
+		public int compare(UserInterfaceLock first, UserInterfaceLock second)
+		{
+			return (first.index < second.index) ? -1 : ((first.index == second.index) ? 0 : 1);
+		}
+	};
+
 	private final int index;
 	private final String description;
 
@@ -211,6 +211,13 @@ public class AziaLogging
 				put(Subsystem.LOCK);
 			}
 		};
+		public static final LogTag<LogCategory> LOCK_DEBUG = new LogTag<LogCategory>(LogCategory.class) {
+			protected void initialize()
+			{
+				put(Mode.DEBUG);
+				put(Subsystem.LOCK);
+			}
+		};
 		public static final LogTag<LogCategory> HANDLER_FAIL = new LogTag<LogCategory>(LogCategory.class) {
 			protected void initialize()
 			{
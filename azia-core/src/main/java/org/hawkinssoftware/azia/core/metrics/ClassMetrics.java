@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceTask;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Counters and phase durations of one <code>UserInterfaceTask</code> or <code>UserInterfaceTransaction</code> class.
+ * For a task, each count refers to the sessions in which it was the outermost task; for a transaction, to the sessions
+ * it joined. The assembly and post-processing durations are only recorded for tasks.
+ * 
+ * @author Byron Hawkins
+ */
+@DomainRole.Join(membership = TransactionFacilitation.class)
+public class ClassMetrics
+{
+	private final String name;
+
+	private final LongAdder started = new LongAdder();
+	private final LongAdder committed = new LongAdder();
+	private final LongAdder rolledBack = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder[] collisions = new LongAdder[UserInterfaceTask.CollisionStatus.values().length];
+
+	private final LatencyHistogram assembly = new LatencyHistogram();
+	private final LatencyHistogram commit = new LatencyHistogram();
+	private final LatencyHistogram postProcessing = new LatencyHistogram();
+
+	ClassMetrics(String name)
+	{
+		this.name = name;
+
+		for (int i = 0; i < collisions.length; i++)
+		{
+			collisions[i] = new LongAdder();
+		}
+	}
+
+	public void sessionStarted()
+	{
+		started.increment();
+	}
+
+	public void sessionCommitted()
+	{
+		committed.increment();
+	}
+
+	public void sessionRolledBack()
+	{
+		rolledBack.increment();
+	}
+
+	/**
+	 * The session collided and was terminated; it will be retried unless it is also counted as failed.
+	 */
+	public void sessionCollided(UserInterfaceTask.CollisionStatus status)
+	{
+		collisions[status.ordinal()].increment();
+	}
+
+	/**
+	 * The session collided and exhausted its retries.
+	 */
+	public void sessionFailed()
+	{
+		failed.increment();
+	}
+
+	public void recordAssembly(long nanos)
+	{
+		assembly.record(nanos);
+	}
+
+	public void recordCommit(long nanos)
+	{
+		commit.record(nanos);
+	}
+
+	public void recordPostProcessing(long nanos)
+	{
+		postProcessing.record(nanos);
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public long getStarted()
+	{
+		return started.sum();
+	}
+
+	public long getCommitted()
+	{
+		return committed.sum();
+	}
+
+	public long getRolledBack()
+	{
+		return rolledBack.sum();
+	}
+
+	public long getFailed()
+	{
+		return failed.sum();
+	}
+
+	/**
+	 * @return the number of retries caused by each <code>CollisionStatus</code>, by name
+	 */
+	public Map<String, Long> getRetries()
+	{
+		Map<String, Long> retries = new LinkedHashMap<String, Long>();
+		for (UserInterfaceTask.CollisionStatus status : UserInterfaceTask.CollisionStatus.values())
+		{
+			retries.put(status.name(), collisions[status.ordinal()].sum());
+		}
+		return retries;
+	}
+
+	public LatencyHistogram getAssembly()
+	{
+		return assembly;
+	}
+
+	public LatencyHistogram getCommit()
+	{
+		return commit;
+	}
+
+	public LatencyHistogram getPostProcessing()
+	{
+		return postProcessing;
+	}
+
+	void reset()
+	{
+		started.reset();
+		committed.reset();
+		rolledBack.reset();
+		failed.reset();
+		for (LongAdder collision : collisions)
+		{
+			collision.reset();
+		}
+		assembly.reset();
+		commit.reset();
+		postProcessing.reset();
+	}
+}
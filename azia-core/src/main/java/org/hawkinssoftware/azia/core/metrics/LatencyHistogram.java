@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Lock-free histogram of durations, with one bucket per power of two nanoseconds. Each bucket is a striped counter, so
+ * concurrent recording threads do not contend on a shared cache line. Percentiles are reported as the upper bound of
+ * the bucket in which they fall, so they may overstate the true value by up to a factor of two.
+ * 
+ * @author Byron Hawkins
+ */
+@DomainRole.Join(membership = TransactionFacilitation.class)
+public class LatencyHistogram
+{
+	// bucket i counts durations of [2^(i-1), 2^i) nanoseconds; the last bucket also counts everything longer
+	private static final int BUCKET_COUNT = 40;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maximumNanos = new AtomicLong();
+
+	LatencyHistogram()
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	public void record(long nanos)
+	{
+		if (nanos < 0L)
+		{
+			nanos = 0L;
+		}
+		buckets[Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKET_COUNT - 1)].increment();
+		totalNanos.add(nanos);
+
+		long maximum = maximumNanos.get();
+		while ((nanos > maximum) && !maximumNanos.compareAndSet(maximum, nanos))
+		{
+			maximum = maximumNanos.get();
+		}
+	}
+
+	public long getCount()
+	{
+		long count = 0L;
+		for (LongAdder bucket : buckets)
+		{
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	public double getMeanMicros()
+	{
+		long count = getCount();
+		return (count == 0L) ? 0.0 : (totalNanos.sum() / (count * 1000.0));
+	}
+
+	public double getMedianMicros()
+	{
+		return getPercentileMicros(0.5);
+	}
+
+	public double getP99Micros()
+	{
+		return getPercentileMicros(0.99);
+	}
+
+	public double getMaxMicros()
+	{
+		return maximumNanos.get() / 1000.0;
+	}
+
+	/**
+	 * @return the upper bound of the bucket containing the <code>percentile</code> (between 0 and 1), limited to the
+	 *         longest duration recorded
+	 */
+	public double getPercentileMicros(double percentile)
+	{
+		long[] counts = new long[BUCKET_COUNT];
+		long count = 0L;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			counts[i] = buckets[i].sum();
+			count += counts[i];
+		}
+		if (count == 0L)
+		{
+			return 0.0;
+		}
+
+		long rank = (long) Math.ceil(percentile * count);
+		long cumulative = 0L;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			cumulative += counts[i];
+			if (cumulative >= rank)
+			{
+				return Math.min(1L << i, maximumNanos.get()) / 1000.0;
+			}
+		}
+		return getMaxMicros();
+	}
+
+	void reset()
+	{
+		for (LongAdder bucket : buckets)
+		{
+			bucket.reset();
+		}
+		totalNanos.reset();
+		maximumNanos.set(0L);
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.hawkinssoftware.azia.core.action.TransactionRegistry;
+import org.hawkinssoftware.azia.core.action.UserInterfaceTransactionDomains.TransactionFacilitation;
+import org.hawkinssoftware.azia.core.lock.LockRegistry;
+import org.hawkinssoftware.azia.core.log.AziaLogging.Tag;
+import org.hawkinssoftware.rns.core.log.Log;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Records the activity of the transaction engine, and publishes it as a <code>TransactionMetricsMXBean</code> when
+ * first used. Recording takes no lock: each counter is striped, and the per-class metrics are found in a concurrent
+ * map, so the engine records on every session. The per-class metrics are keyed by class name, so that they do not pin
+ * the class loader of a task or transaction class; like-named classes of different loaders share their metrics.
+ * 
+ * @author Byron Hawkins
+ */
+@DomainRole.Join(membership = TransactionFacilitation.class)
+public class TransactionMetrics implements TransactionMetricsMXBean
+{
+	public static final String OBJECT_NAME = "org.hawkinssoftware.azia:type=TransactionMetrics";
+
+	private static final TransactionMetrics INSTANCE = new TransactionMetrics();
+
+	static
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		}
+		catch (JMException e)
+		{
+			// e.g. already registered by another class loader; recording works regardless
+			Log.out(Tag.WARNING, e, "Failed to register the transaction metrics as %s", OBJECT_NAME);
+		}
+	}
+
+	public static TransactionMetrics getInstance()
+	{
+		return INSTANCE;
+	}
+
+	private final ConcurrentMap<String, ClassMetrics> taskMetrics = new ConcurrentHashMap<String, ClassMetrics>();
+	private final ConcurrentMap<String, ClassMetrics> transactionMetrics = new ConcurrentHashMap<String, ClassMetrics>();
+	private final LatencyHistogram lockWait = new LatencyHistogram();
+
+	private TransactionMetrics()
+	{
+	}
+
+	public ClassMetrics forTask(Class<?> taskType)
+	{
+		return getClassMetrics(taskMetrics, taskType);
+	}
+
+	public ClassMetrics forTransaction(Class<?> transactionType)
+	{
+		return getClassMetrics(transactionMetrics, transactionType);
+	}
+
+	private ClassMetrics getClassMetrics(ConcurrentMap<String, ClassMetrics> metricsByTypeName, Class<?> type)
+	{
+		String typeName = type.getName();
+		ClassMetrics metrics = metricsByTypeName.get(typeName);
+		if (metrics == null)
+		{
+			ClassMetrics created = new ClassMetrics(typeName);
+			metrics = metricsByTypeName.putIfAbsent(typeName, created);
+			if (metrics == null)
+			{
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	public void recordLockWait(long nanos)
+	{
+		lockWait.record(nanos);
+	}
+
+	@Override
+	public List<ClassMetrics> getTaskMetrics()
+	{
+		return new ArrayList<ClassMetrics>(taskMetrics.values());
+	}
+
+	@Override
+	public List<ClassMetrics> getTransactionMetrics()
+	{
+		return new ArrayList<ClassMetrics>(transactionMetrics.values());
+	}
+
+	@Override
+	public LatencyHistogram getLockWait()
+	{
+		return lockWait;
+	}
+
+	@Override
+	public int getActorLockCount()
+	{
+		LockRegistry registry = LockRegistry.getInstance();
+		return (registry == null) ? 0 : registry.getActorLockCount();
+	}
+
+	@Override
+	public int getActorBasedContributorCount()
+	{
+		return TransactionRegistry.getInstance().getActorBasedContributorCount();
+	}
+
+	@Override
+	public int getLiveContextCount()
+	{
+		return (LockRegistry.getInstance() == null) ? 0 : TransactionRegistry.getLiveContextCount();
+	}
+
+	@Override
+	public void reset()
+	{
+		for (ClassMetrics metrics : taskMetrics.values())
+		{
+			metrics.reset();
+		}
+		for (ClassMetrics metrics : transactionMetrics.values())
+		{
+			metrics.reset();
+		}
+		lockWait.reset();
+	}
+}
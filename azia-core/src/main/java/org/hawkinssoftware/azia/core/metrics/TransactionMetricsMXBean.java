@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface of the transaction engine, registered with the platform MBean server under
+ * <code>TransactionMetrics.OBJECT_NAME</code>. Counters accumulate from startup or the last <code>reset()</code>;
+ * gauges report the current state.
+ * 
+ * @author Byron Hawkins
+ */
+public interface TransactionMetricsMXBean
+{
+	List<ClassMetrics> getTaskMetrics();
+
+	List<ClassMetrics> getTransactionMetrics();
+
+	/**
+	 * Duration of every wait for an <code>AutonomousLock</code> which was not immediately available, whether or not it
+	 * was eventually acquired.
+	 */
+	LatencyHistogram getLockWait();
+
+	int getActorLockCount();
+
+	int getActorBasedContributorCount();
+
+	int getLiveContextCount();
+
+	void reset();
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2011 HawkinsSoftware
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Byron Hawkins of HawkinsSoftware
+ */
+package org.hawkinssoftware.azia.core.lock;
+
+import org.hawkinssoftware.azia.core.lock.LockTransactionContext.LockState;
+import org.hawkinssoftware.azia.core.lock.UserInterfaceLockDomains.LockManagement;
+import org.hawkinssoftware.rns.core.moa.ExecutionPath;
+import org.hawkinssoftware.rns.core.role.DomainRole;
+
+/**
+ * Narrow hook for measuring the <code>CrossLockValidator</code> from the benchmark module. Each method acts only on the
+ * wait-for graph of the calling thread: holds and waits are published in its bookkeeping without taking or waiting
+ * for any lock, so a benchmark can build a graph of any shape and check a wait against it repeatedly.
+ * 
+ * Since it would corrupt the bookkeeping of a real session open on the calling thread, it is not part of the
+ * azia-core jar, and is shipped only in its test-jar, on which the benchmark module depends.
+ * 
+ * @author Byron Hawkins
+ */
+@ExecutionPath.NoFrame
+@DomainRole.Join(membership = LockManagement.class)
+public final class WaitGraphProbe
+{
+	/**
+	 * A lock of the simulated graph, which guards no actor.
+	 * 
+	 * @author Byron Hawkins
+	 */
+	public static final class Node
+	{
+		private final AutonomousLock lock;
+
+		private Node(String description)
+		{
+			lock = new AutonomousLock(description);
+		}
+	}
+
+	public static Node createNode(String description)
+	{
+		return new Node(description);
+	}
+
+	/**
+	 * Publish that the calling thread holds <code>node</code>.
+	 */
+	public static void hold(Node node)
+	{
+		LockTransactionContext.get().addFullLock(node.lock);
+	}
+
+	/**
+	 * Publish that the calling thread awaits <code>node</code>, and check the wait for a crosslock.
+	 * 
+	 * @return true if the wait closes a crosslock of which the calling thread is the victim
+	 */
+	public static boolean await(Node node)
+	{
+		return LockTransactionContext.get().setAwaitedLock(node.lock) == LockState.COLLISION;
+	}
+
+	public static void clearAwait()
+	{
+		LockTransactionContext.get().clearAwaitedLock();
+	}
+
+	/**
+	 * Withdraw every hold and wait published by the calling thread.
+	 */
+	public static void release()
+	{
+		LockTransactionContext.get().emergencyClearAllLocks();
+	}
+
+	private WaitGraphProbe()
+	{
+	}
+}